@@ -1,21 +1,50 @@
 package com.appl.library;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 
+import android.animation.TimeInterpolator;
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.database.DataSetObserver;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.PointF;
+import android.graphics.Rect;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.Trace;
 import android.util.AttributeSet;
+import android.util.Log;
+import android.util.SparseArray;
 import android.view.*;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityManager;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.view.accessibility.AccessibilityNodeProvider;
 import android.widget.Adapter;
-import android.widget.Scroller;
+import android.widget.EdgeEffect;
+import android.widget.LinearLayout;
+import android.widget.Space;
 
 /**
  * @author Martin Appl (appl.m@seznam.cz)
  */
 public class Carousel extends ViewGroup {
-    protected final int NO_VALUE = Integer.MIN_VALUE + 1777;
+    /**
+     * @deprecated use {@link CarouselLayoutEngine#NO_VALUE}
+     */
+    @Deprecated
+    protected final int NO_VALUE = CarouselLayoutEngine.NO_VALUE;
 
     /**
      * Children added with this layout mode will be added after the last child
@@ -45,12 +74,58 @@ public class Carousel extends ViewGroup {
     /** Aligning in progress */
     protected static final int TOUCH_STATE_ALIGN = 3;
 
-    private final Scroller mScroller = new Scroller(getContext());
+    private final CarouselScroller mScroller = new CarouselScroller();
+    private EdgeEffect mEdgeGlowLeft;
+    private EdgeEffect mEdgeGlowRight;
     private VelocityTracker mVelocityTracker;
     protected int mTouchSlop;
     private int mMinimumVelocity;
     private int mMaximumVelocity;
     private float mLastMotionX;
+    private long mLastMotionTime;
+    private float mInitialMotionX;
+    private float mInitialMotionY;
+
+    private static final int INVALID_POINTER = -1;
+    /**
+     * Id of pointer which drives the drag
+     */
+    private int mActivePointerId = INVALID_POINTER;
+    /**
+     * Set when gesture moved vertically first, such gesture belongs to parent
+     */
+    private boolean mIsUnableToDrag;
+    private final int[] mNestedScrollConsumed = new int[2];
+
+    /**
+     * Scroll distance from touch events, which was not applied yet. Moves are applied once per frame.
+     */
+    private float mPendingScrollDelta;
+    private boolean mScrollFrameScheduled = false;
+    private Choreographer.FrameCallback mScrollFrameCallback;
+    private final Runnable mScrollFrameRunnable = new Runnable() {
+        @Override
+        public void run() {
+            applyPendingScroll();
+        }
+    };
+
+    /**
+     * When enabled, drag is extrapolated by finger velocity to compensate input latency
+     */
+    private boolean mTouchPredictionEnabled = false;
+    /**
+     * How far ahead in milliseconds is finger position predicted
+     */
+    private static final int TOUCH_PREDICTION_TIME = 8;
+    /**
+     * Finger velocity in pixels per millisecond computed from samples of last move event
+     */
+    private float mTouchVelocity;
+    /**
+     * Predicted distance which is already contained in scroll offset
+     */
+    private int mAppliedPrediction;
 
     protected int mTouchState = TOUCH_STATE_RESTING;
 
@@ -63,7 +138,9 @@ public class Carousel extends ViewGroup {
 
         @Override
         public void onInvalidated() {
+            hideReportedItems();
             removeAllViews();
+            mLayout.clear();
             invalidate();
         }
 
@@ -74,9 +151,10 @@ public class Carousel extends ViewGroup {
      */
     protected float mSpacing = 0.5f;
     /**
-     * Index of view in center of screen, which is most in foreground
+     * Range of laid out items, their coordinates, edges of content and index of view in center of screen,
+     * which is most in foreground
      */
-    private int mReverseOrderIndex = -1;
+    private final CarouselLayoutEngine mLayout = new CarouselLayoutEngine();
     /**
      * Movement speed will be divided by this coefficient;
      */
@@ -85,18 +163,273 @@ public class Carousel extends ViewGroup {
     protected int mChildWidth = 240;
     protected int mChildHeight = 360;
 
+    /**
+     * Number of rows of items scrolled together, each laid out column holds one item of every lane
+     */
+    private int mLaneCount = 1;
+    /**
+     * Relative heights of lanes, null if lanes have equal height
+     */
+    private float[] mLaneWeights;
+
     private int mSelection;
     protected Adapter mAdapter;
 
-    private int mFirstVisibleChild;
-    private int mLastVisibleChild;
+    private static final long INVALID_ID = Long.MIN_VALUE;
+    /**
+     * Stable id of item which was selected when state was saved, it is looked up when adapter is available
+     */
+    private long mRestoredItemId = INVALID_ID;
+    /**
+     * Offset of selected item center from widget center, applied when first child is laid out
+     */
+    private int mRestoredOffset;
 
     protected final ViewCache<View> mCache = new ViewCache<>();
 
-    protected int mRightEdge = NO_VALUE;
-    protected int mLeftEdge = NO_VALUE;
+    /**
+     * Duration of animated scroll to item in milliseconds
+     */
+    private static final int SCROLL_TO_ITEM_DURATION = 400;
+
+    /**
+     * Shortest duration of scroll to item, reached when navigation key is held
+     */
+    private static final int MIN_KEY_SCROLL_DURATION = 100;
+
+    /**
+     * Position which is being scrolled to center by animation, -1 if none
+     */
+    private int mAlignTargetPosition = -1;
+
+    private ItemAccessibilityProvider mAccessibilityProvider;
+
+    /**
+     * Selection listener is called synchronously on every change of item in center
+     */
+    public static final int SELECTION_DISPATCH_IMMEDIATE = 0;
+    /**
+     * Selection listener is called at most once per frame with latest selected item
+     */
+    public static final int SELECTION_DISPATCH_PER_FRAME = 1;
+    /**
+     * Selection listener is called only when scrolling stops, with item which ends in center
+     */
+    public static final int SELECTION_DISPATCH_ON_SETTLE = 2;
 
     private OnItemSelectedListener mOnItemSelectedListener;
+    private OnSelectionSettledListener mOnSelectionSettledListener;
+    private int mSelectionDispatchMode = SELECTION_DISPATCH_IMMEDIATE;
+    /**
+     * Time in milliseconds for which widget has to rest before selection is considered settled
+     */
+    private int mSelectionSettleDelay = 0;
+    /**
+     * Position last reported to item selected listener, -1 if none
+     */
+    private int mDispatchedSelection = -1;
+    /**
+     * Position last reported as settled, -1 if none
+     */
+    private int mSettledSelection = -1;
+    private boolean mSelectionDispatchScheduled = false;
+    private boolean mSelectionSettlePending = false;
+
+    private final Runnable mSelectionDispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mSelectionDispatchScheduled = false;
+            dispatchItemSelected();
+        }
+    };
+
+    private final Runnable mSelectionSettleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mSelectionSettlePending = false;
+            //widget started moving again, settle is checked again when it stops
+            if (mTouchState != TOUCH_STATE_RESTING || getChildCount() == 0) return;
+
+            if (mSelectionDispatchMode == SELECTION_DISPATCH_ON_SETTLE) {
+                dispatchItemSelected();
+            }
+            if (mSettledSelection != mSelection) {
+                mSettledSelection = mSelection;
+                //announced only when widget stops, not for every item passing center during fling
+                sendAccessibilityEvent(AccessibilityEvent.TYPE_VIEW_SELECTED);
+                if (mOnSelectionSettledListener != null) {
+                    mOnSelectionSettledListener.onSelectionSettled(getSelectedView(), mSelection);
+                }
+            }
+        }
+    };
+
+    private final ComponentCallbacks2 mMemoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            Carousel.this.onTrimMemory(level);
+        }
+
+        @Override
+        public void onLowMemory() {
+            Carousel.this.onTrimMemory(TRIM_MEMORY_COMPLETE);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    };
+    private final List<View> mTempViews = new ArrayList<View>();
+
+    private OnItemVisibilityChangedListener mOnItemVisibilityChangedListener;
+    /**
+     * Minimal change of visible fraction or distance from center which is reported to visibility listener
+     */
+    private float mVisibilityChangeThreshold = 0.05f;
+    /**
+     * Range of positions reported to visibility listener, mReportedLast < mReportedFirst if none
+     */
+    private int mReportedFirst = 0;
+    private int mReportedLast = -1;
+    /**
+     * Values last reported to visibility listener, indexed from mReportedFirst. Second pair of arrays is filled
+     * in next pass and arrays are swapped.
+     */
+    private float[] mReportedFractions = new float[0];
+    private float[] mReportedDistances = new float[0];
+    private float[] mNextFractions = new float[0];
+    private float[] mNextDistances = new float[0];
+    private final Rect mVisibleRect = new Rect();
+
+    /**
+     * Players attached to items near center, null if items do not play
+     */
+    private PlaybackSlotPool<?> mPlaybackSlotPool;
+
+    /**
+     * Queue of item changes from other threads, null if adapter is changed only through notifications
+     */
+    private CarouselChangeQueue<?> mChangeQueue;
+
+    private static final String TRACE_SECTION_REFILL = "Carousel.refill";
+    private static final String TRACE_SECTION_BIND = "Carousel.getViewFromAdapter";
+    private static final String TRACE_SECTION_TRANSFORM = "Carousel.applyTransformations";
+    /**
+     * Recorder of interactions, null when tracing is off
+     */
+    private CarouselTracer mTracer;
+
+    //offscreen rendering
+    private final Canvas mOffscreenCanvas = new Canvas();
+    /**
+     * True while widget is rendered by renderOffscreen, selection listener is not notified in this state
+     */
+    private boolean mRenderingOffscreen = false;
+
+    /**
+     * Visual effect applied on children, null if children are not transformed
+     */
+    private CarouselTransformer mTransformer;
+    private final CarouselTransformer.Transform mTransform = new CarouselTransformer.Transform();
+
+    /**
+     * When true, flings are handed to render thread on API 21+ when widget is hardware accelerated
+     */
+    private boolean mRenderThreadFlingEnabled = false;
+    /**
+     * True while children are animated by render thread. Scroll offset of widget stays where fling started,
+     * motion of fling is part of translation animation of every child.
+     */
+    private boolean mRenderThreadFling = false;
+    private int mRenderThreadFlingStartX;
+    /**
+     * Time between two samples of child transformation curves handed to render thread, one frame
+     */
+    private static final int RENDER_THREAD_SAMPLE_INTERVAL = 16;
+
+    //hit testing
+    /**
+     * Inverted transformation matrices of children by child index, valid until children are transformed,
+     * added or removed
+     */
+    private Matrix[] mInverseMatrices = new Matrix[0];
+    private boolean[] mInvertible = new boolean[0];
+    /**
+     * Incremented whenever transformations of children change
+     */
+    private int mTransformGeneration;
+    private int mInverseGeneration = -1;
+    private int mInverseFirst;
+    private int mInverseCount;
+    /**
+     * Result of last hit test, reused while the same point is tested against the same children
+     */
+    private float mHitX = Float.NaN;
+    private float mHitY = Float.NaN;
+    private int mHitScrollX;
+    private int mHitIndex = -1;
+    /**
+     * Hit point in coordinates of hit child
+     */
+    private final float[] mHitPoint = new float[2];
+    private final float[] mTestPoint = new float[2];
+    /**
+     * Adapter position of front-most item hit by touch down, -1 if none
+     */
+    private int mTouchDownPosition = -1;
+    /**
+     * Tap to center is allowed only when touch down did not stop running scroll
+     */
+    private boolean mTapAllowed;
+
+    /**
+     * Number of views which still should be created by warm up
+     */
+    private int mWarmUpRemaining;
+    /**
+     * Next position bound by warm up, -1 when it is chosen by laid out items in next idle time
+     */
+    private int mWarmUpPosition = -1;
+    private boolean mWarmUpScheduled = false;
+
+    private final MessageQueue.IdleHandler mWarmUpHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            if (mAdapter == null || getItemCount() == 0 || mWarmUpRemaining <= 0) {
+                mWarmUpRemaining = 0;
+                mWarmUpScheduled = false;
+                return false;
+            }
+
+            //bind positions in order in which they are going to be requested, right behind visible children
+            if (getChildCount() > 0) {
+                mWarmUpPosition = Math.max(mWarmUpPosition, mLayout.getLastPosition() + 1);
+            } else if (mWarmUpPosition == -1) {
+                mWarmUpPosition = mSelection;
+            }
+            while (mWarmUpPosition < getItemCount() && mCache.hasPreparedView(mWarmUpPosition)) {
+                mWarmUpPosition++;
+            }
+            if (mWarmUpPosition >= getItemCount()) {
+                mWarmUpRemaining = 0;
+                mWarmUpScheduled = false;
+                return false;
+            }
+
+            final View v = obtainView(mWarmUpPosition, null);
+            if (v.getLayoutParams() == null) v.setLayoutParams(new LayoutParams(mChildWidth, mChildHeight));
+
+            measureItemView(v);
+            v.setSelected(false);
+
+            mCache.cachePreparedView(mWarmUpPosition, v);
+            mWarmUpPosition++;
+            mWarmUpRemaining--;
+
+            mWarmUpScheduled = mWarmUpRemaining > 0;
+            return mWarmUpScheduled;
+        }
+    };
 
     public Carousel(Context context) {
         this(context, null);
@@ -110,427 +443,1743 @@ public class Carousel extends ViewGroup {
         super(context, attrs, defStyleAttr);
 
         setChildrenDrawingOrderEnabled(true);
+        checkHitTestHook();
         final ViewConfiguration configuration = ViewConfiguration.get(context);
         mTouchSlop = configuration.getScaledTouchSlop();
         mMinimumVelocity = configuration.getScaledMinimumFlingVelocity();
         mMaximumVelocity = configuration.getScaledMaximumFlingVelocity();
+        mScroller.setStopVelocity(mMinimumVelocity);
+
+        if (android.os.Build.VERSION.SDK_INT >= 21) {
+            setNestedScrollingEnabled(true);
+        }
+
+        //D-pad navigation
+        setFocusable(true);
+
+        if (android.os.Build.VERSION.SDK_INT >= 14) {
+            mEdgeGlowLeft = new EdgeEffect(context);
+            mEdgeGlowRight = new EdgeEffect(context);
+        }
     }
 
     public Adapter getAdapter() {
         return mAdapter;
     }
 
-    public void setAdapter(Adapter adapter) {
-        if (mAdapter != null) {
-            mAdapter.unregisterDataSetObserver(mDataObserver);
+    /**
+     * Sets number of lanes - parallel rows of items which scroll in lockstep. Items of all lanes are taken from one
+     * adapter, item of lane <i>l</i> in column <i>c</i> is on adapter position <i>c * laneCount + l</i>.
+     * One scroll state and one refill pass drive all lanes, every column is laid out, transformed and recycled as one
+     * child. When there is more than one lane, positions used by widget (selection, listener, scrolling) are column indexes.
+     * Views are recycled only within their lane, so lanes can use different item views.
+     *
+     * @param laneCount number of lanes, 1 for single row carousel
+     */
+    public void setLaneCount(int laneCount) {
+        if (laneCount < 1) throw new IllegalArgumentException("Lane count must be at least 1");
+        if (laneCount == mLaneCount) return;
+
+        //keep first item of selected column in selection
+        mSelection = mSelection * mLaneCount / laneCount;
+        mLaneCount = laneCount;
+
+        //views in pool have shape of old columns, they can not be reused
+        for (int i = 0; i < getChildCount(); i++) {
+            releaseItemViewCaches(getChildAt(i));
         }
-        mAdapter = adapter;
-        mAdapter.registerDataSetObserver(mDataObserver);
-        reset();
+        releasePooledViewCaches();
+        removeAllViewsInLayout();
+        mLayout.clear();
+        mCache.clear();
+
+        if (mAdapter != null) reset();
     }
 
-    public View getSelectedView() {
-        return getChildAt(mReverseOrderIndex);
+    public int getLaneCount() {
+        return mLaneCount;
     }
 
-    public int getSelection() {
-        return mSelection;
+    /**
+     * Sets relative heights of lanes, lanes have equal height by default
+     *
+     * @param weights weight of each lane or null for equal heights
+     */
+    public void setLaneWeights(float... weights) {
+        if (weights != null && weights.length != mLaneCount)
+            throw new IllegalArgumentException("Number of weights must be equal to lane count");
+        mLaneWeights = weights != null ? weights.clone() : null;
+        if (mAdapter != null) reset();
     }
 
-    public void setSelection(int position) {
-        if (mAdapter == null)
-            throw new IllegalStateException("You are trying to set selection on widget without adapter");
-        if (position < 0 || position > mAdapter.getCount() - 1)
-            throw new IllegalArgumentException("Position index must be in range of adapter values (0 - getCount()-1)");
+    /**
+     * @return number of positions in widget - adapter items, or columns when there are more lanes
+     */
+    public int getItemCount() {
+        if (mAdapter == null) return 0;
+        return (mAdapter.getCount() + mLaneCount - 1) / mLaneCount;
+    }
 
-        mSelection = position;
+    /**
+     * @param position position in widget, column index when there are more lanes
+     * @param lane     lane index
+     * @return adapter position of item, it can be out of adapter range in last column
+     */
+    public int getAdapterPosition(int position, int lane) {
+        return position * mLaneCount + lane;
+    }
 
+    public void setAdapter(Adapter adapter) {
+        if (mAdapter != null) {
+            mAdapter.unregisterDataSetObserver(mDataObserver);
+        }
+        mAdapter = adapter;
+        mAdapter.registerDataSetObserver(mDataObserver);
+        //items of new adapter were not reported yet
+        mDispatchedSelection = -1;
+        mSettledSelection = -1;
+
+        if (mRestoredItemId != INVALID_ID) {
+            mSelection = findRestoredPosition(mSelection, mRestoredItemId);
+            mRestoredItemId = INVALID_ID;
+        } else if (mSelection > getItemCount() - 1) {
+            mSelection = Math.max(0, getItemCount() - 1);
+        }
         reset();
     }
 
     @Override
-    public void computeScroll() {
-        final int centerItemLeft = getWidth() / 2 - mChildWidth / 2;
-        final int centerItemRight = getWidth() / 2 + mChildWidth / 2;
+    protected Parcelable onSaveInstanceState() {
+        stopRenderThreadFling();
+        final SavedState ss = new SavedState(super.onSaveInstanceState());
+        ss.selection = mSelection;
+        ss.offset = getChildCount() > 0 ? getItemCenter(mSelection) - (getScrollX() + getWidth() / 2) : 0;
+        ss.itemId = mAdapter != null && mAdapter.hasStableIds() && mSelection < getItemCount()
+            ? mAdapter.getItemId(getAdapterPosition(mSelection, 0)) : INVALID_ID;
+        return ss;
+    }
 
-        if (mRightEdge != NO_VALUE && mScroller.getFinalX() > mRightEdge - centerItemRight) {
-            mScroller.setFinalX(mRightEdge - centerItemRight);
-        }
-        if (mLeftEdge != NO_VALUE && mScroller.getFinalX() < mLeftEdge - centerItemLeft) {
-            mScroller.setFinalX(mLeftEdge - centerItemLeft);
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
         }
 
-        if (mScroller.computeScrollOffset()) {
-            if (mScroller.getFinalX() == mScroller.getCurrX()) {
-                mScroller.abortAnimation();
-                mTouchState = TOUCH_STATE_RESTING;
-                clearChildrenCache();
-            } else {
-                final int x = mScroller.getCurrX();
-                scrollTo(x, 0);
+        final SavedState ss = (SavedState) state;
+        super.onRestoreInstanceState(ss.getSuperState());
 
-                postInvalidate();
-            }
-        } else if (mTouchState == TOUCH_STATE_FLING) {
-            mTouchState = TOUCH_STATE_RESTING;
-            clearChildrenCache();
+        mSelection = ss.selection;
+        mRestoredOffset = ss.offset;
+        if (mAdapter == null) {
+            mRestoredItemId = ss.itemId;
+            return;
         }
+        if (getItemCount() == 0) return;
 
-        refill();
-        updateReverseOrderIndex();
-    }
+        mSelection = findRestoredPosition(ss.selection, ss.itemId);
 
+        //layout is built directly on restored position in next layout pass
+        if (getChildCount() > 0) {
+            removeAndCacheAllViews();
+        }
+        requestLayout();
+    }
 
-    @Override
-    protected void onLayout(boolean changed, int l, int t, int r, int b) {
-        if (mAdapter == null || mAdapter.getCount() == 0) {
-            return;
+    /**
+     * Looks up position of item with given stable id, starting from its old position
+     *
+     * @return position of item or old position clamped to adapter range, if item is not found
+     */
+    private int findRestoredPosition(int oldPosition, long itemId) {
+        final int count = getItemCount();
+        final int clamped = Math.max(0, Math.min(count - 1, oldPosition));
+        if (itemId == INVALID_ID || !mAdapter.hasStableIds()) return clamped;
+
+        for (int d = 0; d < count; d++) {
+            final int after = clamped + d;
+            final int before = clamped - d;
+            if (after >= count && before < 0) break;
+            if (after < count && mAdapter.getItemId(getAdapterPosition(after, 0)) == itemId) return after;
+            if (before >= 0 && mAdapter.getItemId(getAdapterPosition(before, 0)) == itemId) return before;
         }
-        View v = null;
-        if (getChildCount() == 0) {
-            v = getViewFromAdapter(mSelection);
-            addAndMeasureChild(v, LAYOUT_MODE_AFTER);
+        return clamped;
+    }
 
-            final int horizontalCenter = getWidth() / 2;
-            final int verticalCenter = getHeight() / 2;
-            final int left = horizontalCenter - v.getMeasuredWidth() / 2;
-            final int right = left + v.getMeasuredWidth();
-            final int top = verticalCenter - v.getMeasuredHeight() / 2;
-            final int bottom = top + v.getMeasuredHeight();
-            v.layout(left, top, right, bottom);
+    public View getSelectedView() {
+        return getChildAt(mLayout.getCenterIndex());
+    }
 
-            mFirstVisibleChild = mSelection;
-            mLastVisibleChild = mSelection;
+    /**
+     * @return index of child in center of screen, which is drawn last
+     */
+    protected int getCenterChildIndex() {
+        return mLayout.getCenterIndex();
+    }
 
-            if (mLastVisibleChild == mAdapter.getCount() - 1) {
-                mRightEdge = right;
-            }
-            if (mFirstVisibleChild == 0) {
-                mLeftEdge = left;
-            }
-        }
+    public int getSelection() {
+        return mSelection;
+    }
 
-        refill();
+    /**
+     * @return position of first laid out item
+     */
+    public int getFirstVisiblePosition() {
+        return mLayout.getFirstPosition();
+    }
 
-        if (v != null) {
-            mReverseOrderIndex = indexOfChild(v);
-            v.setSelected(true);
-        } else {
-            updateReverseOrderIndex();
-        }
+    /**
+     * @return position of last laid out item
+     */
+    public int getLastVisiblePosition() {
+        return mLayout.getLastPosition();
     }
 
-    private void updateReverseOrderIndex() {
-        int oldReverseIndex = mReverseOrderIndex;
-        final int screenCenter = getWidth() / 2 + getScrollX();
-        final int c = getChildCount();
+    /**
+     * @param child child of widget
+     * @return view returned by adapter for child, subclasses wrapping adapter views in frames return wrapped view
+     */
+    protected View getAdapterView(View child) {
+        return child;
+    }
 
-        int minDiff = Integer.MAX_VALUE;
-        int minDiffIndex = -1;
+    public void setSelection(int position) {
+        if (mAdapter == null)
+            throw new IllegalStateException("You are trying to set selection on widget without adapter");
+        if (position < 0 || position > getItemCount() - 1)
+            throw new IllegalArgumentException("Position index must be in range of adapter values (0 - getCount()-1)");
 
-        int viewCenter, diff;
-        for (int i = 0; i < c; i++) {
-            viewCenter = getChildCenter(i);
-            diff = Math.abs(screenCenter - viewCenter);
-            if (diff < minDiff) {
-                minDiff = diff;
-                minDiffIndex = i;
-            }
+        mSelection = position;
+
+        if (getChildCount() > 0 && position >= mLayout.getFirstPosition() && position <= mLayout.getLastPosition()) {
+            //item is laid out already, selection change is only scroll change
+            stopRenderThreadFling();
+            mScroller.forceFinished(true);
+            mTouchState = TOUCH_STATE_RESTING;
+            scrollTo(getItemCenter(position) - getWidth() / 2, 0);
+            refill();
+            updateReverseOrderIndex();
+            return;
         }
 
-        if (minDiff != Integer.MAX_VALUE) {
-            mReverseOrderIndex = minDiffIndex;
+        reset();
+    }
+
+    /**
+     * Releases caches according to memory state of system. Recycle pool is shrunk first, drawing caches of children
+     * are released when memory is critically low or when UI is hidden.
+     * Subclasses releasing their own caches should call super implementation.
+     *
+     * @param level trim level from {@link ComponentCallbacks2}
+     */
+    protected void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mWarmUpRemaining = 0;
         }
 
-        if (oldReverseIndex != mReverseOrderIndex) {
-            View oldSelected = getChildAt(oldReverseIndex);
-            View newSelected = getChildAt(mReverseOrderIndex);
+        final int poolSize;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            poolSize = 0;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            poolSize = 2;
+        } else {
+            poolSize = mCache.size() / 2;
+        }
 
-            oldSelected.setSelected(false);
-            newSelected.setSelected(true);
+        //pooled views rebuild their caches when they are shown again
+        releasePooledViewCaches();
+        mCache.trimToSize(poolSize);
 
-            mSelection = mFirstVisibleChild + mReverseOrderIndex;
-            if (mOnItemSelectedListener != null) {
-                mOnItemSelectedListener.onItemSelected(newSelected, mSelection);
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            for (int i = 0; i < getChildCount(); i++) {
+                releaseItemViewCaches(getChildAt(i));
             }
+            invalidate();
         }
-
     }
 
     /**
-     * Layout children from right to left
+     * Estimates memory held by caches of widget - drawing caches of children and views in recycle pool.
+     * Subclasses holding their own caches should add them to value of super implementation.
+     *
+     * @return footprint in bytes
      */
-    protected int layoutChildToBefore(View v, int right) {
-        final int verticalCenter = getHeight() / 2;
+    public long getMemoryFootprint() {
+        long bytes = 0;
+        for (int i = 0; i < getChildCount(); i++) {
+            bytes += getItemViewFootprint(getChildAt(i));
+        }
 
-        int l, t, r, b;
-        l = right - v.getMeasuredWidth();
-        t = verticalCenter - v.getMeasuredHeight() / 2;
-        ;
-        r = right;
-        b = t + v.getMeasuredHeight();
+        final List<View> cached = mCache.getCachedViews(mTempViews);
+        for (int i = 0; i < cached.size(); i++) {
+            bytes += getItemViewFootprint(cached.get(i));
+        }
+        cached.clear();
 
-        v.layout(l, t, r, b);
-        return r - (int)(v.getMeasuredWidth() * mSpacing);
+        return bytes;
     }
 
     /**
-     * @param left X coordinate where should we start layout
+     * Memory held by drawing cache of one item view. Reading of enabled drawing cache builds it, so enabled cache
+     * is read only for children drawn in software, whose cache was built by drawing. Other enabled caches are
+     * not counted, subclasses which track their caches can override.
+     *
+     * @return footprint in bytes
      */
-    protected int layoutChild(View v, int left) {
-        final int verticalCenter = getHeight() / 2;
-
-        int l, t, r, b;
-        l = left;
-        t = verticalCenter - v.getMeasuredHeight() / 2;
-        ;
-        r = l + v.getMeasuredWidth();
-        b = t + v.getMeasuredHeight();
-
-        v.layout(l, t, r, b);
-        return l + (int)(v.getMeasuredWidth() * mSpacing);
+    protected long getItemViewFootprint(View v) {
+        final boolean built = !v.isDrawingCacheEnabled() || (v.getParent() == this && !isHardwareAccelerated());
+        final Bitmap cache = built ? v.getDrawingCache(true) : null;
+        return cache != null ? cache.getByteCount() : 0;
     }
 
     /**
-     * Adds a view as a child view and takes care of measuring it
+     * Pre-creates, binds and measures views of items right after laid out ones, so that first scroll does not have
+     * to inflate and bind them. Views are created one by one when UI thread is idle, so startup is not blocked.
+     * Each prepared view is handed out for its own position without binding again. When items change, prepared views
+     * are reused for any position like recycled views. Must be called from UI thread.
      *
-     * @param child      The view to add
-     * @param layoutMode Either LAYOUT_MODE_LEFT or LAYOUT_MODE_RIGHT
-     * @return child which was actually added to container, subclasses can override to introduce frame views
+     * @param count number of views to prepare
      */
-    protected View addAndMeasureChild(final View child, final int layoutMode) {
-        if (child.getLayoutParams() == null) child.setLayoutParams(new LayoutParams(mChildWidth,
-            mChildHeight));
+    public void warmUp(int count) {
+        if (mAdapter == null)
+            throw new IllegalStateException("You are trying to warm up widget without adapter");
+        if (count < 0)
+            throw new IllegalArgumentException("Count of views to warm up must not be negative");
+
+        mWarmUpRemaining = count;
+        mWarmUpPosition = -1;
+        if (count > 0 && !mWarmUpScheduled) {
+            Looper.myQueue().addIdleHandler(mWarmUpHandler);
+            mWarmUpScheduled = true;
+        }
+    }
 
-        final int index = layoutMode == LAYOUT_MODE_TO_BEFORE ? 0 : -1;
-        addViewInLayout(child, index, child.getLayoutParams(), true);
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getContext().getApplicationContext().registerComponentCallbacks(mMemoryCallbacks);
+    }
 
-        final int pwms = MeasureSpec.makeMeasureSpec(mChildWidth, MeasureSpec.EXACTLY);
-        final int phms = MeasureSpec.makeMeasureSpec(mChildHeight, MeasureSpec.EXACTLY);
-        measureChild(child, pwms, phms);
-        child.setDrawingCacheEnabled(isChildrenDrawnWithCacheEnabled());
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        getContext().getApplicationContext().unregisterComponentCallbacks(mMemoryCallbacks);
 
-        return child;
+        if (mWarmUpScheduled) {
+            Looper.myQueue().removeIdleHandler(mWarmUpHandler);
+            mWarmUpScheduled = false;
+        }
+        cancelScrollFrame();
+        stopRenderThreadFling();
+        removeCallbacks(mSelectionDispatchRunnable);
+        removeCallbacks(mSelectionSettleRunnable);
+        mSelectionDispatchScheduled = false;
+        mSelectionSettlePending = false;
+        hideReportedItems();
+        if (mPlaybackSlotPool != null) mPlaybackSlotPool.releaseAll();
+
+        //release bitmaps now instead of waiting for finalizers, children rebuild their caches when drawn again
+        for (int i = 0; i < getChildCount(); i++) {
+            releaseItemViewCaches(getChildAt(i));
+        }
+        releasePooledViewCaches();
+        mCache.clear();
     }
 
     /**
-     * Remove all data, reset to initial state and attempt to refill
+     * Moves view which is no longer shown to recycle pool. Caches of view are kept, so rebound view reuses its
+     * cache bitmap instead of allocating new one during fling.
      */
-    private void reset() {
-        if(mAdapter == null || mAdapter.getCount() == 0){
-            return;
-        }
+    protected void recycleView(View v) {
+        if (mRenderThreadFling) v.animate().cancel();
+        mCache.cacheView(v);
+    }
 
-        if(getChildCount() == 0){
-            requestLayout();
-            return;
+    private void releasePooledViewCaches() {
+        final List<View> cached = mCache.getCachedViews(mTempViews);
+        for (int i = 0; i < cached.size(); i++) {
+            releaseItemViewCaches(cached.get(i));
         }
+        cached.clear();
+    }
 
-        View selectedView = getChildAt(mReverseOrderIndex);
-        int selectedLeft = selectedView.getLeft();
-        int selectedTop = selectedView.getTop();
+    /**
+     * Releases bitmaps held by item view. Called when widget is detached from window, when memory is trimmed
+     * and when views can not be reused anymore. Subclasses holding their own caches of item views should call super implementation.
+     */
+    protected void releaseItemViewCaches(View v) {
+        v.destroyDrawingCache();
+    }
 
+    /**
+     * Applies drawing cache policy of widget to child. Called when child is added and when children drawing cache
+     * is enabled or disabled at start and end of scrolling. Subclasses with own policy can override.
+     */
+    protected void updateItemDrawingCache(View child) {
+        child.setDrawingCacheEnabled(isChildrenDrawnWithCacheEnabled());
+    }
 
-        removeAllViewsInLayout();
-        mRightEdge = NO_VALUE;
-        mLeftEdge = NO_VALUE;
+    /**
+     * Animates scroll, so that item on given position ends in center of widget
+     *
+     * @param position adapter position of item
+     */
+    public void smoothScrollToPosition(int position) {
+        smoothScrollToPosition(position, SCROLL_TO_ITEM_DURATION);
+    }
 
-        View v = mAdapter.getView(mSelection, null, this);
-        addAndMeasureChild(v, LAYOUT_MODE_AFTER);
-        mReverseOrderIndex = 0;
+    private void smoothScrollToPosition(int position, int duration) {
+        if (mAdapter == null)
+            throw new IllegalStateException("You are trying to scroll widget without adapter");
+        if (position < 0 || position > getItemCount() - 1)
+            throw new IllegalArgumentException("Position index must be in range of adapter values (0 - getCount()-1)");
 
-        final int right = selectedLeft + v.getMeasuredWidth();
-        final int bottom = selectedTop + v.getMeasuredHeight();
-        v.layout(selectedLeft, selectedTop, right, bottom);
+        if (getChildCount() == 0) {
+            setSelection(position);
+            return;
+        }
 
-        mFirstVisibleChild = mSelection;
-        mLastVisibleChild = mSelection;
+        stopRenderThreadFling();
+        final int dx = getItemCenter(position) - (getScrollX() + getWidth() / 2);
+        if (dx == 0) return;
+
+        mTouchState = TOUCH_STATE_ALIGN;
+        mAlignTargetPosition = position;
+        mScroller.startScroll(getScrollX(), dx, duration);
+        invalidate();
+    }
 
-        if (mLastVisibleChild == mAdapter.getCount() - 1) {
-            mRightEdge = right;
+    @Override
+    public boolean onKeyDown(int keyCode, KeyEvent event) {
+        if (mAdapter == null || getItemCount() == 0 || getChildCount() == 0) {
+            return super.onKeyDown(keyCode, event);
         }
-        if (mFirstVisibleChild == 0) {
-            mLeftEdge = selectedLeft;
+
+        //repeated presses continue from target of running animation, so held key does not lose steps
+        final int base = mTouchState == TOUCH_STATE_ALIGN && mAlignTargetPosition != -1 ? mAlignTargetPosition : mSelection;
+        final int last = getItemCount() - 1;
+        int target;
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_DPAD_LEFT:
+                target = base - 1;
+                break;
+            case KeyEvent.KEYCODE_DPAD_RIGHT:
+                target = base + 1;
+                break;
+            case KeyEvent.KEYCODE_PAGE_UP:
+                target = base - getItemsPerPage();
+                break;
+            case KeyEvent.KEYCODE_PAGE_DOWN:
+                target = base + getItemsPerPage();
+                break;
+            case KeyEvent.KEYCODE_MOVE_HOME:
+                target = 0;
+                break;
+            case KeyEvent.KEYCODE_MOVE_END:
+                target = last;
+                break;
+            default:
+                return super.onKeyDown(keyCode, event);
         }
 
-        refill();
+        target = Math.max(0, Math.min(last, target));
+        if (target == base) {
+            //let focus leave widget on its edge
+            return super.onKeyDown(keyCode, event);
+        }
 
-        mReverseOrderIndex = indexOfChild(v);
-        v.setSelected(true);
+        //animation gets shorter while key is held
+        final int duration = Math.max(MIN_KEY_SCROLL_DURATION, SCROLL_TO_ITEM_DURATION / (1 + event.getRepeatCount()));
+        smoothScrollToPosition(target, duration);
+        return true;
     }
 
-    protected void refill() {
-        if (mAdapter == null || getChildCount() == 0) return;
+    /**
+     * @return number of items which fit into widget width
+     */
+    private int getItemsPerPage() {
+        final int stride = (int)(mChildWidth * mSpacing);
+        if (stride <= 0) return 1;
+        return Math.max(1, getWidth() / stride);
+    }
 
-        final int leftScreenEdge = getScrollX();
-        int rightScreenEdge = leftScreenEdge + getWidth();
+    @Override
+    public void onInitializeAccessibilityEvent(AccessibilityEvent event) {
+        super.onInitializeAccessibilityEvent(event);
+        event.setClassName(Carousel.class.getName());
+
+        if (mAdapter == null) return;
+        event.setScrollable(getItemCount() > 1);
+        event.setItemCount(getItemCount());
+        event.setCurrentItemIndex(mSelection);
+        if (getChildCount() > 0) {
+            event.setFromIndex(mLayout.getFirstPosition());
+            event.setToIndex(mLayout.getLastPosition());
+        }
+    }
 
-        removeNonVisibleViewsLeftToRight(leftScreenEdge);
-        removeNonVisibleViewsRightToLeft(rightScreenEdge);
+    @Override
+    public void onInitializeAccessibilityNodeInfo(AccessibilityNodeInfo info) {
+        super.onInitializeAccessibilityNodeInfo(info);
+        info.setClassName(Carousel.class.getName());
+
+        if (mAdapter == null) return;
+        info.setScrollable(getItemCount() > 1);
+        if (mSelection > 0) {
+            info.addAction(AccessibilityNodeInfo.ACTION_SCROLL_BACKWARD);
+        }
+        if (mSelection < getItemCount() - 1) {
+            info.addAction(AccessibilityNodeInfo.ACTION_SCROLL_FORWARD);
+        }
+    }
 
-        refillLeftToRight(leftScreenEdge, rightScreenEdge);
-        refillRightToLeft(leftScreenEdge);
+    @Override
+    public boolean performAccessibilityAction(int action, Bundle arguments) {
+        if (mAdapter != null && getChildCount() > 0) {
+            switch (action) {
+                case AccessibilityNodeInfo.ACTION_SCROLL_FORWARD:
+                    if (mSelection < getItemCount() - 1) {
+                        smoothScrollToPosition(mSelection + 1);
+                        return true;
+                    }
+                    return false;
+                case AccessibilityNodeInfo.ACTION_SCROLL_BACKWARD:
+                    if (mSelection > 0) {
+                        smoothScrollToPosition(mSelection - 1);
+                        return true;
+                    }
+                    return false;
+            }
+        }
+        return super.performAccessibilityAction(action, arguments);
     }
 
-    protected int getPartOfViewCoveredBySibling(){
-        return (int)(mChildWidth * (1.0f - mSpacing));
+    @Override
+    public AccessibilityNodeProvider getAccessibilityNodeProvider() {
+        if (android.os.Build.VERSION.SDK_INT < 16) return super.getAccessibilityNodeProvider();
+
+        if (mAccessibilityProvider == null) {
+            mAccessibilityProvider = new ItemAccessibilityProvider();
+        }
+        return mAccessibilityProvider;
     }
 
-    protected View getViewFromAdapter(int position){
-        return mAdapter.getView(position, mCache.getCachedView(), this);
+    /**
+     * Description of item used by accessibility services. Laid out items are described by content description
+     * of their view, other items only if adapter item is text. Override to describe items which are not laid out.
+     *
+     * @param position adapter position of item
+     * @return description or null if item can not be described
+     */
+    protected CharSequence getItemDescription(int position) {
+        if (position >= mLayout.getFirstPosition() && position <= mLayout.getLastPosition() && getChildCount() > 0) {
+            final View child = getChildAt(position - mLayout.getFirstPosition());
+            CharSequence description = child.getContentDescription();
+            if (description == null) description = getAdapterView(child).getContentDescription();
+            if (description != null) return description;
+        }
+        final Object item = mAdapter.getItem(getAdapterPosition(position, 0));
+        return item instanceof CharSequence ? (CharSequence) item : null;
     }
 
     /**
-     * Checks and refills empty area on the left
+     * Tap on item which is not in center scrolls it to center, tap on item in center clicks its view
      *
-     * @return firstItemPosition
+     * @param position adapter position of item
+     * @return true if tap was handled
      */
-    protected void refillRightToLeft(final int leftScreenEdge) {
-        if (getChildCount() == 0) return;
+    private boolean performItemTap(int position) {
+        if (position != mSelection) {
+            smoothScrollToPosition(position);
+            return true;
+        }
+        final View child = getSelectedView();
+        return child != null && getAdapterView(child).performClick();
+    }
 
-        View child = getChildAt(0);
-        int childRight = child.getRight();
-        int newRight = childRight - (int)(mChildWidth * mSpacing);
+    /**
+     * Tells accessibility services that range of exposed items changed, called after children were added or removed
+     */
+    private void notifyAccessibleItemsChanged() {
+        if (mAccessibilityProvider != null) mAccessibilityProvider.onItemsLaidOut();
+    }
 
-        while (newRight - getPartOfViewCoveredBySibling() > leftScreenEdge && mFirstVisibleChild > 0) {
-            mFirstVisibleChild--;
+    /**
+     * Exposes items around visible ones as virtual views, so accessibility services can reach items which are not
+     * laid out. Accessibility focus moves between items without scrolling, select scrolls item to center
+     * and click acts as a tap.
+     */
+    @TargetApi(16)
+    private class ItemAccessibilityProvider extends AccessibilityNodeProvider {
+        private final Rect mTempRect = new Rect();
+        private final int[] mTempLocation = new int[2];
+        /**
+         * Item with accessibility focus, -1 if no item has it
+         */
+        private int mFocusedItem = -1;
+        //range of items exposed when node of widget was last requested
+        private int mFirstExposed = -1;
+        private int mLastExposed = -1;
 
-            child = getViewFromAdapter(mFirstVisibleChild);
-            child.setSelected(false);
-            mReverseOrderIndex++;
+        @Override
+        public AccessibilityNodeInfo createAccessibilityNodeInfo(int virtualViewId) {
+            if (virtualViewId == View.NO_ID) {
+                final AccessibilityNodeInfo info = AccessibilityNodeInfo.obtain(Carousel.this);
+                onInitializeAccessibilityNodeInfo(info);
+                mFirstExposed = -1;
+                mLastExposed = -1;
+                if (mAdapter != null && getChildCount() > 0) {
+                    mFirstExposed = getFirstAccessibleItem();
+                    mLastExposed = getLastAccessibleItem();
+                    for (int p = mFirstExposed; p <= mLastExposed; p++) {
+                        info.addChild(Carousel.this, p);
+                    }
+                }
+                return info;
+            }
 
-            addAndMeasureChild(child, LAYOUT_MODE_TO_BEFORE);
-            newRight = layoutChildToBefore(child, newRight);
+            if (mAdapter == null || getChildCount() == 0 || virtualViewId < 0 || virtualViewId >= getItemCount()) {
+                return null;
+            }
 
-            if (mFirstVisibleChild <= 0) {
-                mLeftEdge = child.getLeft();
+            final AccessibilityNodeInfo info = AccessibilityNodeInfo.obtain();
+            info.setSource(Carousel.this, virtualViewId);
+            info.setParent(Carousel.this);
+            info.setPackageName(getContext().getPackageName());
+            info.setClassName(Carousel.class.getName() + ".Item");
+            info.setContentDescription(getItemDescription(virtualViewId));
+            info.setEnabled(true);
+            info.setFocusable(true);
+            info.setClickable(true);
+            info.setSelected(virtualViewId == mSelection);
+            info.addAction(AccessibilityNodeInfo.ACTION_SELECT);
+            info.addAction(AccessibilityNodeInfo.ACTION_CLICK);
+            info.setAccessibilityFocused(virtualViewId == mFocusedItem);
+            if (virtualViewId == mFocusedItem) {
+                info.addAction(AccessibilityNodeInfo.ACTION_CLEAR_ACCESSIBILITY_FOCUS);
+            } else {
+                info.addAction(AccessibilityNodeInfo.ACTION_ACCESSIBILITY_FOCUS);
             }
-        }
-        return;
-    }
 
-    /**
-     * Checks and refills empty area on the right
-     */
-    protected void refillLeftToRight(final int leftScreenEdge, final int rightScreenEdge) {
+            final int center = getItemCenter(virtualViewId) - getScrollX();
+            final int top = (getHeight() - mChildHeight) / 2;
+            final Rect r = mTempRect;
+            r.set(center - mChildWidth / 2, top, center + mChildWidth / 2, top + mChildHeight);
+            info.setBoundsInParent(r);
+            info.setVisibleToUser(r.right > 0 && r.left < getWidth());
+
+            getLocationOnScreen(mTempLocation);
+            r.offset(mTempLocation[0], mTempLocation[1]);
+            info.setBoundsInScreen(r);
+
+            return info;
+        }
 
-        View child;
-        int newLeft;
+        @Override
+        public boolean performAction(int virtualViewId, int action, Bundle arguments) {
+            if (virtualViewId == View.NO_ID) {
+                return performAccessibilityAction(action, arguments);
+            }
+            if (mAdapter == null || virtualViewId < 0 || virtualViewId >= getItemCount()) return false;
+
+            switch (action) {
+                case AccessibilityNodeInfo.ACTION_SELECT:
+                    smoothScrollToPosition(virtualViewId);
+                    return true;
+                case AccessibilityNodeInfo.ACTION_CLICK:
+                    if (!performItemTap(virtualViewId)) return false;
+                    sendEventForItem(virtualViewId, AccessibilityEvent.TYPE_VIEW_CLICKED);
+                    return true;
+                case AccessibilityNodeInfo.ACTION_ACCESSIBILITY_FOCUS:
+                    if (mFocusedItem == virtualViewId) return false;
+                    if (mFocusedItem != -1) clearFocus(mFocusedItem);
+                    mFocusedItem = virtualViewId;
+                    invalidate();
+                    sendEventForItem(virtualViewId, AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUSED);
+                    return true;
+                case AccessibilityNodeInfo.ACTION_CLEAR_ACCESSIBILITY_FOCUS:
+                    if (mFocusedItem != virtualViewId) return false;
+                    clearFocus(virtualViewId);
+                    return true;
+            }
+            return false;
+        }
 
-        child = getChildAt(getChildCount() - 1);
-        int childLeft = child.getLeft();
-        newLeft = childLeft + (int)(mChildWidth * mSpacing);
+        private void clearFocus(int virtualViewId) {
+            mFocusedItem = -1;
+            invalidate();
+            sendEventForItem(virtualViewId, AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUS_CLEARED);
+        }
 
-        while (newLeft + getPartOfViewCoveredBySibling() < rightScreenEdge && mLastVisibleChild < mAdapter
-            .getCount() - 1) {
-            mLastVisibleChild++;
+        /**
+         * Item focus is dropped when positions of items changed, as focused position may show different item
+         */
+        void onItemsReset() {
+            if (mFocusedItem != -1) clearFocus(mFocusedItem);
+            sendContentChanged();
+        }
 
-            child = getViewFromAdapter(mLastVisibleChild);
-            child.setSelected(false);
+        /**
+         * Sends content change of widget when range of exposed items is not the one services know
+         */
+        void onItemsLaidOut() {
+            if (mFirstExposed == -1) return;
+            final boolean empty = mAdapter == null || getChildCount() == 0;
+            if (!empty && getFirstAccessibleItem() == mFirstExposed && getLastAccessibleItem() == mLastExposed) return;
+            sendContentChanged();
+        }
 
-            addAndMeasureChild(child, LAYOUT_MODE_AFTER);
-            newLeft = layoutChild(child, newLeft);
+        private void sendContentChanged() {
+            if (mFirstExposed == -1 || !isAccessibilityEnabled()) return;
 
-            if (mLastVisibleChild >= mAdapter.getCount() - 1) {
-                mRightEdge = child.getRight();
+            //sent once until services request widget node again
+            mFirstExposed = -1;
+            mLastExposed = -1;
+            final AccessibilityEvent event = AccessibilityEvent.obtain(AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED);
+            onInitializeAccessibilityEvent(event);
+            if (android.os.Build.VERSION.SDK_INT >= 19) {
+                event.setContentChangeTypes(AccessibilityEvent.CONTENT_CHANGE_TYPE_SUBTREE);
             }
+            final ViewParent parent = getParent();
+            if (parent != null) parent.requestSendAccessibilityEvent(Carousel.this, event);
+        }
+
+        private void sendEventForItem(int virtualViewId, int eventType) {
+            final ViewParent parent = getParent();
+            if (parent == null || !isAccessibilityEnabled()) return;
+
+            final AccessibilityEvent event = AccessibilityEvent.obtain(eventType);
+            event.setPackageName(getContext().getPackageName());
+            event.setClassName(Carousel.class.getName() + ".Item");
+            event.setContentDescription(getItemDescription(virtualViewId));
+            event.setEnabled(true);
+            event.setSource(Carousel.this, virtualViewId);
+            parent.requestSendAccessibilityEvent(Carousel.this, event);
+        }
+
+        private boolean isAccessibilityEnabled() {
+            final AccessibilityManager manager =
+                (AccessibilityManager) getContext().getSystemService(Context.ACCESSIBILITY_SERVICE);
+            return manager != null && manager.isEnabled();
+        }
+
+        private int getFirstAccessibleItem() {
+            return Math.max(0, mLayout.getFirstPosition() - getItemsPerPage());
         }
-    }
 
+        private int getLastAccessibleItem() {
+            return Math.min(getItemCount() - 1, mLayout.getLastPosition() + getItemsPerPage());
+        }
+    }
 
     /**
-     * Remove non visible views from left edge of screen
+     * Computes center of item from position of laid out children, item does not need to be laid out.
+     * There must be at least one child.
+     *
+     * @param position adapter position of item
+     * @return horizontal center of item in pixels including scroll offset
      */
-    protected void removeNonVisibleViewsLeftToRight(final int leftScreenEdge) {
-        if (getChildCount() == 0) return;
-
-        // check if we should remove any views in the left
-        View firstChild = getChildAt(0);
+    protected int getItemCenter(int position) {
+        return mLayout.getItemCenter(position);
+    }
 
-        while (firstChild != null && firstChild.getLeft()+(mChildWidth * mSpacing)  < leftScreenEdge && getChildCount() > 1) {
+    /**
+     * @return scroll offset on which first item is in center of widget
+     */
+    protected int getMinScrollX() {
+        return getItemCenter(0) - getWidth() / 2;
+    }
 
-            // remove view
-            removeViewsInLayout(0, 1);
+    /**
+     * @return scroll offset on which last item is in center of widget
+     */
+    protected int getMaxScrollX() {
+        return getItemCenter(getItemCount() - 1) - getWidth() / 2;
+    }
 
-            mCache.cacheView(firstChild);
+    @Override
+    public void computeScroll() {
+        final long start = mTracer != null ? System.nanoTime() : 0;
 
-            mFirstVisibleChild++;
-            mReverseOrderIndex--;
+        if (mRenderThreadFling) {
+            if (mScroller.computeScrollOffset() && !mScroller.isFinished()) {
+                computeRenderThreadFling();
+                postInvalidate();
+                if (mTracer != null) mTracer.recordFrame(getLayoutScrollX(), start, mTouchState, getChildCount());
+                return;
+            }
+            //fling ended, UI thread continues from its end
+            stopRenderThreadFling();
+            if (mScroller.hasHitEdge()) absorbEdgeGlow((int) mScroller.getCurrVelocity());
+        }
 
-            if (mReverseOrderIndex == 0) {
-                break;
+        if (mScroller.computeScrollOffset()) {
+            int x = mScroller.getCurrX();
+            boolean clamped = false;
+            //bounds were taken when scroll started, item count may have changed since then
+            if (getChildCount() > 0) {
+                final int minX = getMinScrollX();
+                final int maxX = getMaxScrollX();
+                if (x < minX || x > maxX) {
+                    x = x < minX ? minX : maxX;
+                    if (!mScroller.isFinished()) {
+                        absorbEdgeGlow((int) mScroller.getCurrVelocity());
+                        mScroller.forceFinished(true);
+                        clamped = true;
+                    }
+                }
             }
+            scrollTo(x, 0);
 
-            // Continue to check the next child only if we have more than
-            // one child left
-            if (getChildCount() > 1) {
-                firstChild = getChildAt(0);
+            if (mScroller.isFinished()) {
+                if (!clamped && mScroller.hasHitEdge()) {
+                    absorbEdgeGlow((int) mScroller.getCurrVelocity());
+                }
+                mTouchState = TOUCH_STATE_RESTING;
+                clearChildrenCache();
             } else {
-                firstChild = null;
+                postInvalidate();
             }
+        } else if (mTouchState == TOUCH_STATE_FLING || mTouchState == TOUCH_STATE_ALIGN) {
+            mTouchState = TOUCH_STATE_RESTING;
+            clearChildrenCache();
+        }
+
+        refill();
+        updateReverseOrderIndex();
+
+        if (mTransformer != null) {
+            applyTransformations();
+        }
+
+        updateSelectionSettle();
+        dispatchItemVisibility();
+        if (mPlaybackSlotPool != null && !mRenderingOffscreen) {
+            mPlaybackSlotPool.update(this, mTouchState == TOUCH_STATE_FLING);
         }
 
+        if (mTracer != null) {
+            mTracer.setGeometry(getWidth(), getHeight(), getItemCount());
+            mTracer.recordFrame(getScrollX(), start, mTouchState, getChildCount());
+        }
     }
 
     /**
-     * Remove non visible views from right edge of screen
+     * Reports items whose visible fraction or distance from center changed by more than threshold since last report,
+     * and items which are no longer laid out
      */
-    protected void removeNonVisibleViewsRightToLeft(final int rightScreenEdge) {
-        if (getChildCount() == 0) return;
+    private void dispatchItemVisibility() {
+        if (mOnItemVisibilityChangedListener == null || mRenderingOffscreen) return;
 
-        // check if we should remove any views in the right
-        View lastChild = getChildAt(getChildCount() - 1);
-        while (lastChild != null && lastChild.getRight() - (mChildWidth * mSpacing)  > rightScreenEdge &&
-            getChildCount() > 1) {
-            // remove the right view
-            removeViewsInLayout(getChildCount() - 1, 1);
-
-            mCache.cacheView(lastChild);
-
-            mLastVisibleChild--;
-            if (getChildCount() - 1 == mReverseOrderIndex) {
-                break;
+        final int c = getChildCount();
+        for (int p = mReportedFirst; p <= mReportedLast; p++) {
+            if (c == 0 || p < mLayout.getFirstPosition() || p > mLayout.getLastPosition()) {
+                mOnItemVisibilityChangedListener.onItemHidden(p);
             }
+        }
+
+        if (mNextFractions.length < c) {
+            mNextFractions = new float[c];
+            mNextDistances = new float[c];
+        }
 
-            // Continue to check the next child only if we have more than
-            // one child left
-            if (getChildCount() > 1) {
-                lastChild = getChildAt(getChildCount() - 1);
+        for (int i = 0; i < c; i++) {
+            final View child = getChildAt(i);
+            final int position = mLayout.getFirstPosition() + i;
+            final float fraction = getItemVisibleFraction(child);
+            final float distance = Math.abs(getRelativePosition(mLayout.getCenterAt(i)));
+
+            final int reported = position - mReportedFirst;
+            final boolean wasReported = position >= mReportedFirst && position <= mReportedLast;
+            if (!wasReported
+                || Math.abs(fraction - mReportedFractions[reported]) >= mVisibilityChangeThreshold
+                || Math.abs(distance - mReportedDistances[reported]) >= mVisibilityChangeThreshold
+                || (fraction == 0) != (mReportedFractions[reported] == 0)) {
+                mNextFractions[i] = fraction;
+                mNextDistances[i] = distance;
+                mOnItemVisibilityChangedListener.onItemVisibilityChanged(child, position, fraction, distance);
             } else {
-                lastChild = null;
+                //small changes accumulate until they reach threshold
+                mNextFractions[i] = mReportedFractions[reported];
+                mNextDistances[i] = mReportedDistances[reported];
             }
         }
 
-    }
+        float[] swap = mReportedFractions;
+        mReportedFractions = mNextFractions;
+        mNextFractions = swap;
+        swap = mReportedDistances;
+        mReportedDistances = mNextDistances;
+        mNextDistances = swap;
 
-    protected int getChildCenter(View v) {
-        final int w = v.getRight() - v.getLeft();
-        return v.getLeft() + w / 2;
+        mReportedFirst = mLayout.getFirstPosition();
+        mReportedLast = c > 0 ? mLayout.getLastPosition() : mLayout.getFirstPosition() - 1;
     }
 
-    protected int getChildCenter(int i) {
-        return getChildCenter(getChildAt(i));
+    /**
+     * Reports all previously visible items as hidden, used when positions of items are no longer valid
+     */
+    private void hideReportedItems() {
+        if (mOnItemVisibilityChangedListener != null) {
+            for (int p = mReportedFirst; p <= mReportedLast; p++) {
+                mOnItemVisibilityChangedListener.onItemHidden(p);
+            }
+        }
+        mReportedFirst = 0;
+        mReportedLast = -1;
     }
 
-//    @Override
-//    protected void dispatchDraw(Canvas canvas) {
-//        super.dispatchDraw(canvas);
-//    }
+    /**
+     * Computes which part of item is visible. Base implementation takes projection of transformed child clipped
+     * by widget bounds, relative to untransformed child width, so items rotated or scaled down are partially visible.
+     *
+     * @return visible fraction of item in range 0 to 1
+     */
+    protected float getItemVisibleFraction(View child) {
+        if (child.getWidth() == 0) return 0;
 
-    @Override
-    protected int getChildDrawingOrder(int childCount, int i) {
-        if (i < mReverseOrderIndex) {
-            return i;
-        } else {
-            return childCount - 1 - (i - mReverseOrderIndex);
-        }
+        final Rect r = mVisibleRect;
+        child.getHitRect(r);
+        final int left = Math.max(r.left, getScrollX());
+        final int right = Math.min(r.right, getScrollX() + getWidth());
+        if (right <= left) return 0;
 
+        return Math.min(1f, (right - left) / (float) child.getWidth());
     }
 
-    @Override
-    public boolean onInterceptTouchEvent(MotionEvent ev) {
+    /**
+     * Applies transformation of current transformer on all children in one pass
+     */
+    protected void applyTransformations() {
+        beginTraceSection(TRACE_SECTION_TRANSFORM);
+        mTransformGeneration++;
+        final CarouselTransformer.Transform t = mTransform;
+        final int c = getChildCount();
+        for (int i = 0; i < c; i++) {
+            final View v = getChildAt(i);
 
-        /*
+            t.reset();
+            mTransformer.transform(this, getRelativePosition(mLayout.getCenterAt(i)), t);
+
+            v.setRotationY(t.rotationY);
+            v.setTranslationX(t.translationX);
+            v.setScaleX(t.scale);
+            v.setScaleY(t.scale);
+            v.setAlpha(t.alpha);
+        }
+        endTraceSection();
+    }
+
+    /**
+     * Calculates relative position on screen in range -1 to 1, widgets out of screen can have values ove 1 or -1
+     * @param pixelPos Absolute position in pixels including scroll offset
+     * @return relative position
+     */
+    protected float getRelativePosition(int pixelPos){
+        final int half = getWidth()/2;
+        final int centerPos = getScrollX() + half;
+
+        return (pixelPos - centerPos)/((float) half);
+    }
+
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        if (mAdapter == null || getItemCount() == 0) {
+            return;
+        }
+        View v = null;
+        if (getChildCount() == 0) {
+            v = layoutFirstChild();
+        }
+
+        refill();
+
+        if (v != null) {
+            v.setSelected(true);
+        } else {
+            updateReverseOrderIndex();
+        }
+    }
+
+    /**
+     * Adds selected item as first child to center of widget
+     *
+     * @return added child
+     */
+    private View layoutFirstChild() {
+        final View v = getViewFromAdapter(mSelection);
+        addAndMeasureChild(v, LAYOUT_MODE_AFTER);
+
+        final int horizontalCenter = getScrollX() + getWidth() / 2 + mRestoredOffset;
+        final int verticalCenter = getHeight() / 2;
+        final int left = horizontalCenter - v.getMeasuredWidth() / 2;
+        mRestoredOffset = 0;
+        final int right = left + v.getMeasuredWidth();
+        final int top = verticalCenter - v.getMeasuredHeight() / 2;
+        final int bottom = top + v.getMeasuredHeight();
+        v.layout(left, top, right, bottom);
+
+        updateLayoutGeometry();
+        mLayout.layoutFirst(mSelection, left);
+
+        return v;
+    }
+
+    /**
+     * Renders widget with given item in center into canvas, without need to attach widget to window.
+     * Children are created through recycle pool and transformed by current transformer, exactly as on screen.
+     * Only widget which is not attached to window can be rendered, its selection and scroll offset are restored
+     * afterwards. It can be rendered from background thread, but only one thread may use it.
+     *
+     * @param canvas   target canvas
+     * @param width    width of rendered widget
+     * @param height   height of rendered widget
+     * @param position adapter position of item in center
+     * @param offset   scroll offset in pixels from position where item is exactly in center
+     */
+    public void renderOffscreen(Canvas canvas, int width, int height, int position, int offset) {
+        if (mAdapter == null)
+            throw new IllegalStateException("You are trying to render widget without adapter");
+        if (position < 0 || position > getItemCount() - 1)
+            throw new IllegalArgumentException("Position index must be in range of adapter values (0 - getCount()-1)");
+        if (getWindowToken() != null)
+            throw new IllegalStateException("You are trying to render widget which is attached to window");
+
+        final boolean laidOut = getChildCount() > 0;
+        final int savedWidth = getWidth();
+        final int savedHeight = getHeight();
+        final int savedSelection = mSelection;
+        final int savedScrollX = getScrollX();
+        final int savedOffset = laidOut ? savedScrollX + savedWidth / 2 - getItemCenter(savedSelection) : 0;
+
+        mRenderingOffscreen = true;
+        try {
+            layoutOffscreen(width, height, position, offset);
+            drawOffscreen(canvas);
+        } finally {
+            try {
+                if (laidOut && savedSelection < getItemCount()) {
+                    layoutOffscreen(savedWidth, savedHeight, savedSelection, savedOffset);
+                } else {
+                    removeAndCacheAllViews();
+                    mSelection = savedSelection;
+                    scrollTo(savedScrollX, 0);
+                }
+            } finally {
+                mRenderingOffscreen = false;
+            }
+        }
+    }
+
+    /**
+     * Lays out widget of given size with given item in center, without need to attach widget to window
+     */
+    private void layoutOffscreen(int width, int height, int position, int offset) {
+        if (getWidth() != width || getHeight() != height) {
+            measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY));
+            layout(0, 0, width, height);
+        }
+
+        mScroller.forceFinished(true);
+        mTouchState = TOUCH_STATE_RESTING;
+
+        if (getChildCount() == 0 || position < mLayout.getFirstPosition() || position > mLayout.getLastPosition()) {
+            removeAndCacheAllViews();
+            mSelection = position;
+            layoutFirstChild();
+        }
+
+        scrollTo(getItemCenter(position) - width / 2 + offset, 0);
+        refill();
+        updateReverseOrderIndex();
+        if (mTransformer != null) {
+            applyTransformations();
+        }
+    }
+
+    private void drawOffscreen(Canvas canvas) {
+        final int saveCount = canvas.save();
+        canvas.translate(-getScrollX(), -getScrollY());
+        draw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Starts tracing of interactions into given tracer, null stops tracing. Tracing adds only few writes
+     * into preallocated buffer per frame. Sections around refill, binding of items and transformations are
+     * emitted to systrace regardless of tracer (API 18+).
+     */
+    public void setTracer(CarouselTracer tracer) {
+        mTracer = tracer;
+    }
+
+    public CarouselTracer getTracer() {
+        return mTracer;
+    }
+
+    /**
+     * Lays out widget for replay of recording, with scroll offset of first record
+     */
+    void prepareReplay(int width, int height, int scrollX) {
+        if (getWindowToken() != null)
+            throw new IllegalStateException("You are trying to replay trace on widget which is attached to window");
+
+        mRenderingOffscreen = true;
+        layoutOffscreen(width, height, 0, 0);
+
+        //item nearest to center of recorded offset
+        final int center = scrollX + width / 2;
+        int position = 0;
+        for (int i = 1; i < getItemCount(); i++) {
+            if (Math.abs(getItemCenter(i) - center) < Math.abs(getItemCenter(position) - center)) position = i;
+        }
+        layoutOffscreen(width, height, position, center - getItemCenter(position));
+    }
+
+    void replayTouch(MotionEvent ev) {
+        mScroller.setClockOverride(ev.getEventTime());
+        dispatchTouchEvent(ev);
+    }
+
+    /**
+     * Computes and draws one frame of replay at given time, touch moves received since last frame are applied first
+     */
+    void replayFrame(long frameTime, Canvas canvas) {
+        mScroller.setClockOverride(frameTime);
+        if (mScrollFrameScheduled) {
+            cancelScrollFrame();
+            applyPendingScroll();
+        }
+        computeScroll();
+        drawOffscreen(canvas);
+    }
+
+    void finishReplay() {
+        cancelScrollFrame();
+        mScroller.setClockOverride(-1);
+        mScroller.forceFinished(true);
+        mTouchState = TOUCH_STATE_RESTING;
+        mRenderingOffscreen = false;
+    }
+
+    private static void beginTraceSection(String name) {
+        if (android.os.Build.VERSION.SDK_INT >= 18) Trace.beginSection(name);
+    }
+
+    private static void endTraceSection() {
+        if (android.os.Build.VERSION.SDK_INT >= 18) Trace.endSection();
+    }
+
+    /**
+     * Renders widget with given item in center into bitmap, see {@link #renderOffscreen(Canvas, int, int, int, int)}
+     *
+     * @param bitmap   target bitmap, its size is used as widget size
+     * @param position adapter position of item in center
+     * @param offset   scroll offset in pixels from position where item is exactly in center
+     * @return target bitmap
+     */
+    public Bitmap renderToBitmap(Bitmap bitmap, int position, int offset) {
+        bitmap.eraseColor(Color.TRANSPARENT);
+        mOffscreenCanvas.setBitmap(bitmap);
+        renderOffscreen(mOffscreenCanvas, bitmap.getWidth(), bitmap.getHeight(), position, offset);
+        mOffscreenCanvas.setBitmap(null);
+        return bitmap;
+    }
+
+    private void updateReverseOrderIndex() {
+        final int oldReverseIndex = mLayout.getCenterIndex();
+        if (mLayout.updateCenter(getWidth() / 2 + getLayoutScrollX())) {
+            View oldSelected = getChildAt(oldReverseIndex);
+            View newSelected = getChildAt(mLayout.getCenterIndex());
+
+            if (oldSelected != null) oldSelected.setSelected(false);
+            newSelected.setSelected(true);
+
+            mSelection = mLayout.getCenterPosition();
+            if (mOnItemSelectedListener != null && !mRenderingOffscreen) {
+                if (mSelectionDispatchMode == SELECTION_DISPATCH_IMMEDIATE) {
+                    mDispatchedSelection = mSelection;
+                    mOnItemSelectedListener.onItemSelected(newSelected, mSelection);
+                } else if (mSelectionDispatchMode == SELECTION_DISPATCH_PER_FRAME && !mSelectionDispatchScheduled) {
+                    mSelectionDispatchScheduled = true;
+                    if (android.os.Build.VERSION.SDK_INT >= 16) {
+                        postOnAnimation(mSelectionDispatchRunnable);
+                    } else {
+                        post(mSelectionDispatchRunnable);
+                    }
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Reports current selection to item selected listener, if it was not reported already
+     */
+    private void dispatchItemSelected() {
+        if (mOnItemSelectedListener == null || mDispatchedSelection == mSelection) return;
+        final View selected = getSelectedView();
+        if (selected == null) return;
+
+        mDispatchedSelection = mSelection;
+        mOnItemSelectedListener.onItemSelected(selected, mSelection);
+    }
+
+    /**
+     * Schedules settle of selection when widget rests, cancels it when widget moves again. Settled selection is
+     * reported after widget rests for settle delay.
+     */
+    private void updateSelectionSettle() {
+        if (mTouchState != TOUCH_STATE_RESTING) {
+            if (mSelectionSettlePending) {
+                removeCallbacks(mSelectionSettleRunnable);
+                mSelectionSettlePending = false;
+            }
+            return;
+        }
+
+        if (mSelectionSettlePending || mRenderingOffscreen) return;
+        final boolean settleNeeded = mSettledSelection != mSelection
+            || (mSelectionDispatchMode == SELECTION_DISPATCH_ON_SETTLE && mOnItemSelectedListener != null
+            && mDispatchedSelection != mSelection);
+        if (!settleNeeded) return;
+
+        mSelectionSettlePending = true;
+        postDelayed(mSelectionSettleRunnable, mSelectionSettleDelay);
+    }
+
+    /**
+     * Layout children from right to left
+     */
+    protected int layoutChildToBefore(View v, int right) {
+        final int verticalCenter = getHeight() / 2;
+
+        int l, t, r, b;
+        l = right - v.getMeasuredWidth();
+        t = verticalCenter - v.getMeasuredHeight() / 2;
+        ;
+        r = right;
+        b = t + v.getMeasuredHeight();
+
+        v.layout(l, t, r, b);
+        return r - (int)(v.getMeasuredWidth() * mSpacing);
+    }
+
+    /**
+     * @param left X coordinate where should we start layout
+     */
+    protected int layoutChild(View v, int left) {
+        final int verticalCenter = getHeight() / 2;
+
+        int l, t, r, b;
+        l = left;
+        t = verticalCenter - v.getMeasuredHeight() / 2;
+        ;
+        r = l + v.getMeasuredWidth();
+        b = t + v.getMeasuredHeight();
+
+        v.layout(l, t, r, b);
+        return l + (int)(v.getMeasuredWidth() * mSpacing);
+    }
+
+    /**
+     * Adds a view as a child view and takes care of measuring it
+     *
+     * @param child      The view to add
+     * @param layoutMode Either LAYOUT_MODE_LEFT or LAYOUT_MODE_RIGHT
+     * @return child which was actually added to container, subclasses can override to introduce frame views
+     */
+    protected View addAndMeasureChild(final View child, final int layoutMode) {
+        if (child.getLayoutParams() == null) child.setLayoutParams(new LayoutParams(mChildWidth,
+            mChildHeight));
+
+        final int index = layoutMode == LAYOUT_MODE_TO_BEFORE ? 0 : -1;
+        addViewInLayout(child, index, child.getLayoutParams(), true);
+
+        measureItemView(child);
+        updateItemDrawingCache(child);
+
+        return child;
+    }
+
+    /**
+     * Measures item view with exact child size. Recycled views which were already measured with the same size
+     * and did not request layout since then are not measured again.
+     */
+    protected void measureItemView(View child) {
+        if (!child.isLayoutRequested() && child.getMeasuredWidth() == mChildWidth
+            && child.getMeasuredHeight() == mChildHeight) {
+            return;
+        }
+
+        final int pwms = MeasureSpec.makeMeasureSpec(mChildWidth, MeasureSpec.EXACTLY);
+        final int phms = MeasureSpec.makeMeasureSpec(mChildHeight, MeasureSpec.EXACTLY);
+        measureChild(child, pwms, phms);
+    }
+
+    /**
+     * Remove all data, reset to initial state and attempt to refill
+     */
+    private void reset() {
+        stopRenderThreadFling();
+        //positions of items may have changed
+        hideReportedItems();
+        if (mAccessibilityProvider != null) mAccessibilityProvider.onItemsReset();
+        if (mPlaybackSlotPool != null) mPlaybackSlotPool.detachAll();
+        mCache.unbindPreparedViews();
+        mWarmUpPosition = -1;
+
+        if(mAdapter == null || getItemCount() == 0){
+            return;
+        }
+
+        if(getChildCount() == 0){
+            requestLayout();
+            return;
+        }
+
+        if (mSelection > getItemCount() - 1) {
+            mSelection = getItemCount() - 1;
+        }
+
+        View selectedView = getChildAt(mLayout.getCenterIndex());
+        int selectedLeft = selectedView.getLeft();
+        int selectedTop = selectedView.getTop();
+
+
+        removeAndCacheAllViews();
+
+        View v = getViewFromAdapter(mSelection);
+        addAndMeasureChild(v, LAYOUT_MODE_AFTER);
+
+        final int right = selectedLeft + v.getMeasuredWidth();
+        final int bottom = selectedTop + v.getMeasuredHeight();
+        v.layout(selectedLeft, selectedTop, right, bottom);
+
+        updateLayoutGeometry();
+        mLayout.layoutFirst(mSelection, selectedLeft);
+
+        refill();
+
+        v.setSelected(true);
+    }
+
+    /**
+     * Applies batch of item changes without reset. Laid out children keep their coordinates, item which was selected
+     * stays where it was. Children are offset to new positions of their items, only children whose item differs
+     * are rebound.
+     *
+     * @param firstChanged adapter position of first changed item, items before it kept their positions
+     * @param lastChanged  adapter position of last changed item, items after it moved by sizeDelta positions
+     * @param sizeDelta    number of inserted items minus number of removed items
+     * @param anchor       adapter position of previously selected item after changes, -1 if selection did not exist
+     */
+    void onItemsChanged(int firstChanged, int lastChanged, int sizeDelta, int anchor) {
+        if (mAdapter == null) return;
+        stopRenderThreadFling();
+
+        //positions of items may have changed
+        hideReportedItems();
+        if (mAccessibilityProvider != null) mAccessibilityProvider.onItemsReset();
+        if (mPlaybackSlotPool != null) mPlaybackSlotPool.detachAll();
+        mCache.unbindPreparedViews();
+        mWarmUpPosition = -1;
+
+        final int count = getItemCount();
+        if (count == 0) {
+            removeAndCacheAllViews();
+            mSelection = 0;
+            invalidate();
+            return;
+        }
+
+        final int selection = anchor < 0 ? Math.min(mSelection, count - 1) : Math.min(anchor / mLaneCount, count - 1);
+        if (getChildCount() == 0) {
+            mSelection = selection;
+            requestLayout();
+            return;
+        }
+
+        //selected item keeps its coordinates, so laid out items move by the same number of positions
+        final int shift = selection - mLayout.getCenterPosition();
+        updateLayoutGeometry();
+        while (mLayout.getFirstPosition() + shift < 0) {
+            final View firstChild = getChildAt(0);
+            removeViewsInLayout(0, 1);
+            recycleView(firstChild);
+            mLayout.removeFirst();
+        }
+        while (mLayout.getLastPosition() + shift > count - 1) {
+            final View lastChild = getChildAt(getChildCount() - 1);
+            removeViewsInLayout(getChildCount() - 1, 1);
+            recycleView(lastChild);
+            mLayout.removeLast();
+        }
+        mLayout.offsetPositions(shift);
+        mSelection = selection;
+
+        if (mTouchState == TOUCH_STATE_ALIGN && mAlignTargetPosition != -1) {
+            //align continues to the same item from where it is now
+            mAlignTargetPosition = Math.max(0, Math.min(count - 1, mAlignTargetPosition + shift));
+            final int dx = getItemCenter(mAlignTargetPosition) - (getScrollX() + getWidth() / 2);
+            mScroller.startScroll(getScrollX(), dx, SCROLL_TO_ITEM_DURATION);
+        } else if (mTouchState == TOUCH_STATE_FLING && !mScroller.isFinished()) {
+            //bounds of fling were taken from old item count, velocity decay does not depend on where fling started
+            mScroller.fling(getScrollX(), Math.round(mScroller.getCurrVelocity()), getMinScrollX(), getMaxScrollX());
+        }
+
+        //children were offset by shift positions, they still show their items if the items moved by the same count
+        final int first = mLayout.getFirstPosition();
+        for (int i = 0; i < getChildCount(); i++) {
+            final int position = first + i;
+            final int firstItem = position * mLaneCount;
+            final int lastItem = firstItem + mLaneCount - 1;
+            final boolean keptBefore = shift == 0 && lastItem < firstChanged;
+            final boolean movedAfter = shift * mLaneCount == sizeDelta && firstItem > lastChanged;
+            if (!keptBefore && !movedAfter) {
+                rebindChild(i, position);
+            }
+        }
+
+        refill();
+        updateReverseOrderIndex();
+        if (mTransformer != null) {
+            applyTransformations();
+        }
+        invalidate();
+    }
+
+    /**
+     * Binds child again to item on given position, child is replaced if adapter returns different view
+     */
+    private void rebindChild(int index, int position) {
+        final View child = getChildAt(index);
+        final View v = obtainView(position, child);
+        if (v != child) {
+            removeViewsInLayout(index, 1);
+            recycleView(child);
+            if (v.getLayoutParams() == null) v.setLayoutParams(new LayoutParams(mChildWidth, mChildHeight));
+            addViewInLayout(v, index, v.getLayoutParams(), true);
+        }
+
+        measureItemView(v);
+        updateItemDrawingCache(v);
+        layoutChild(v, mLayout.getLeftAt(index));
+        v.setSelected(index == mLayout.getCenterIndex());
+    }
+
+    /**
+     * Removes all children and puts them to recycle pool, so they can be rebound without inflation and measuring
+     */
+    private void removeAndCacheAllViews() {
+        final int c = getChildCount();
+        for (int i = 0; i < c; i++) {
+            recycleView(getChildAt(i));
+        }
+        removeAllViewsInLayout();
+        mLayout.clear();
+    }
+
+    protected void refill() {
+        if (mAdapter == null || getChildCount() == 0) return;
+        beginTraceSection(TRACE_SECTION_REFILL);
+        final long start = mTracer != null ? System.nanoTime() : 0;
+
+        final int leftScreenEdge = getLayoutScrollX();
+        int rightScreenEdge = leftScreenEdge + getWidth();
+        updateLayoutGeometry();
+
+        removeNonVisibleViewsLeftToRight(leftScreenEdge);
+        removeNonVisibleViewsRightToLeft(rightScreenEdge);
+
+        refillLeftToRight(leftScreenEdge, rightScreenEdge);
+        refillRightToLeft(leftScreenEdge);
+
+        if (mTracer != null) mTracer.recordRefill(leftScreenEdge, start, mLayout.getFirstPosition(), mLayout.getLastPosition());
+        notifyAccessibleItemsChanged();
+        endTraceSection();
+    }
+
+    /**
+     * Passes current size of widget, items and spacing to layout engine
+     */
+    private void updateLayoutGeometry() {
+        mLayout.setGeometry(getItemCount(), mChildWidth, mSpacing, getPartOfViewCoveredBySibling(), getWidth());
+    }
+
+    protected int getPartOfViewCoveredBySibling(){
+        return (int)(mChildWidth * (1.0f - mSpacing));
+    }
+
+    protected View getViewFromAdapter(int position){
+        //view prepared by warm up is already bound to its position
+        final View prepared = mCache.getPreparedView(position);
+        if (prepared != null) return prepared;
+        return obtainView(position, mCache.getCachedView());
+    }
+
+    private View obtainView(int position, View convertView) {
+        beginTraceSection(TRACE_SECTION_BIND);
+        final long start = mTracer != null ? System.nanoTime() : 0;
+
+        final View v = getViewFromAdapter(position, convertView);
+
+        if (mTracer != null) mTracer.recordBind(getScrollX(), start, position, convertView != null);
+        endTraceSection();
+        return v;
+    }
+
+    /**
+     * @param convertView view from recycle pool or null if new view should be created
+     * @return view which will be added to container
+     */
+    protected View getViewFromAdapter(int position, View convertView){
+        if (mLaneCount == 1) return mAdapter.getView(position, convertView, this);
+
+        final LaneColumn column = convertView != null ? (LaneColumn) convertView : new LaneColumn(getContext());
+        column.bind(position);
+        return column;
+    }
+
+    /**
+     * Checks and refills empty area on the left
+     *
+     * @return firstItemPosition
+     */
+    protected void refillRightToLeft(final int leftScreenEdge) {
+        if (getChildCount() == 0) return;
+
+        while (mLayout.canAddBefore(leftScreenEdge)) {
+            final int left = mLayout.addBefore();
+
+            final View child = getViewFromAdapter(mLayout.getFirstPosition());
+            child.setSelected(false);
+
+            addAndMeasureChild(child, LAYOUT_MODE_TO_BEFORE);
+            layoutChildToBefore(child, left + child.getMeasuredWidth());
+        }
+    }
+
+    /**
+     * Checks and refills empty area on the right
+     */
+    protected void refillLeftToRight(final int leftScreenEdge, final int rightScreenEdge) {
+        if (getChildCount() == 0) return;
+
+        while (mLayout.canAddAfter(leftScreenEdge)) {
+            final int left = mLayout.addAfter();
+
+            final View child = getViewFromAdapter(mLayout.getLastPosition());
+            child.setSelected(false);
+
+            addAndMeasureChild(child, LAYOUT_MODE_AFTER);
+            layoutChild(child, left);
+        }
+    }
+
+
+    /**
+     * Remove non visible views from left edge of screen. Child in center is never removed.
+     */
+    protected void removeNonVisibleViewsLeftToRight(final int leftScreenEdge) {
+        while (getChildCount() > 1 && mLayout.canRemoveFirst(leftScreenEdge)) {
+            final View firstChild = getChildAt(0);
+            removeViewsInLayout(0, 1);
+            recycleView(firstChild);
+            mLayout.removeFirst();
+        }
+    }
+
+    /**
+     * Remove non visible views from right edge of screen. Child in center is never removed.
+     */
+    protected void removeNonVisibleViewsRightToLeft(final int rightScreenEdge) {
+        final int leftScreenEdge = rightScreenEdge - getWidth();
+        while (getChildCount() > 1 && mLayout.canRemoveLast(leftScreenEdge)) {
+            final View lastChild = getChildAt(getChildCount() - 1);
+            removeViewsInLayout(getChildCount() - 1, 1);
+            recycleView(lastChild);
+            mLayout.removeLast();
+        }
+    }
+
+    /**
+     * @deprecated use {@link #getChildCenter(int)}, centers of children are kept by layout engine
+     */
+    @Deprecated
+    protected int getChildCenter(View v) {
+        final int i = indexOfChild(v);
+        if (i >= 0) return mLayout.getCenterAt(i);
+
+        final int w = v.getRight() - v.getLeft();
+        return v.getLeft() + w / 2;
+    }
+
+    protected int getChildCenter(int i) {
+        return mLayout.getCenterAt(i);
+    }
+
+//    @Override
+//    protected void dispatchDraw(Canvas canvas) {
+//        super.dispatchDraw(canvas);
+//    }
+
+    @Override
+    protected int getChildDrawingOrder(int childCount, int i) {
+        return mLayout.getDrawingOrder(childCount, i);
+    }
+
+    /**
+     * Finds front-most child under given point. Children are tested in reverse drawing order, point is mapped
+     * by inverse of their transformation matrices, so overlapping and rotated children are resolved as they are visible.
+     *
+     * @param x X coordinate relative to this view
+     * @param y Y coordinate relative to this view
+     * @return index of child or -1 if no child was hit
+     */
+    protected int getChildIndexAt(float x, float y) {
+        final boolean inverted = updateInverseMatrices();
+        if (!inverted && x == mHitX && y == mHitY && getScrollX() == mHitScrollX) return mHitIndex;
+
+        final int count = getChildCount();
+        int hit = -1;
+        for (int i = count - 1; i >= 0; i--) {
+            final int index = getChildDrawingOrder(count, i);
+            if (isPointInChild(x, y, index)) {
+                hit = index;
+                mHitPoint[0] = mTestPoint[0];
+                mHitPoint[1] = mTestPoint[1];
+                break;
+            }
+        }
+
+        mHitX = x;
+        mHitY = y;
+        mHitScrollX = getScrollX();
+        mHitIndex = hit;
+        return hit;
+    }
+
+    /**
+     * Maps point by cached inverse matrix of child into {@link #mTestPoint}
+     *
+     * @return true if point is inside of child
+     */
+    private boolean isPointInChild(float x, float y, int index) {
+        final View child = getChildAt(index);
+        if (child.getVisibility() != VISIBLE || !mInvertible[index]) return false;
+
+        final float[] p = mTestPoint;
+        p[0] = x + getScrollX() - mLayout.getLeftAt(index);
+        p[1] = y + getScrollY() - child.getTop();
+        final Matrix inverse = mInverseMatrices[index];
+        if (!inverse.isIdentity()) inverse.mapPoints(p);
+
+        return p[0] >= 0 && p[0] < child.getWidth() && p[1] >= 0 && p[1] < child.getHeight();
+    }
+
+    /**
+     * Inverts transformation matrices of children, if they were transformed, added or removed since last time
+     *
+     * @return true if matrices were inverted again
+     */
+    private boolean updateInverseMatrices() {
+        final int count = getChildCount();
+        if (mInverseGeneration == mTransformGeneration && mInverseCount == count
+            && mInverseFirst == mLayout.getFirstPosition()) {
+            return false;
+        }
+
+        if (mInverseMatrices.length < count) {
+            final Matrix[] matrices = new Matrix[Math.max(count, mInverseMatrices.length * 2)];
+            System.arraycopy(mInverseMatrices, 0, matrices, 0, mInverseMatrices.length);
+            for (int i = mInverseMatrices.length; i < matrices.length; i++) matrices[i] = new Matrix();
+            mInverseMatrices = matrices;
+            mInvertible = new boolean[matrices.length];
+        }
+        for (int i = 0; i < count; i++) {
+            final Matrix m = getChildAt(i).getMatrix();
+            if (m.isIdentity()) {
+                mInverseMatrices[i].reset();
+                mInvertible[i] = true;
+            } else {
+                //child scaled or rotated to zero size can not be hit
+                mInvertible[i] = m.invert(mInverseMatrices[i]);
+            }
+        }
+
+        mInverseGeneration = mTransformGeneration;
+        mInverseCount = count;
+        mInverseFirst = mLayout.getFirstPosition();
+        return true;
+    }
+
+    /**
+     * Hit test used by touch and hover dispatch of {@link ViewGroup}, called for every child under point.
+     * <p>
+     * Below API 21 framework tests children by their indexes, not in drawing order, so point is accepted only
+     * by front-most child and overlapping covers get touches as they are visible. Front-most child is found once
+     * per point, calls for other children only compare against it. Since API 21 framework tests children in drawing
+     * order itself and only the given child is tested.
+     * <p>
+     * Overrides hidden framework method, so it can not be annotated. Presence of the method is checked once
+     * below API 21 and missing method is logged, touches then go to children by framework order.
+     */
+    protected boolean isTransformedTouchPointInView(float x, float y, View child, PointF outLocalPoint) {
+        final float[] local;
+        if (android.os.Build.VERSION.SDK_INT >= 21) {
+            updateInverseMatrices();
+            final int index = indexOfChild(child);
+            if (index == -1 || !isPointInChild(x, y, index)) return false;
+            local = mTestPoint;
+        } else {
+            final int index = getChildIndexAt(x, y);
+            if (index == -1 || getChildAt(index) != child) return false;
+            local = mHitPoint;
+        }
+
+        if (outLocalPoint != null) outLocalPoint.set(local[0], local[1]);
+        return true;
+    }
+
+    private static boolean sHitTestHookChecked = false;
+
+    private static void checkHitTestHook() {
+        if (sHitTestHookChecked || android.os.Build.VERSION.SDK_INT >= 21) return;
+        sHitTestHookChecked = true;
+        try {
+            ViewGroup.class.getDeclaredMethod("isTransformedTouchPointInView", float.class, float.class,
+                View.class, PointF.class);
+        } catch (NoSuchMethodException e) {
+            Log.w(VIEW_LOG_TAG, "Framework hit test hook not found, touches of overlapping items may go to covered item");
+        }
+    }
+
+    /**
+     * Remembers item hit by touch down for tap to center. Events are dispatched to children by framework,
+     * item hit by touch down receives the gesture until it is intercepted by drag.
+     */
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent ev) {
+        if (mTracer != null) mTracer.recordTouch(ev, getScrollX());
+
+        if ((ev.getAction() & MotionEvent.ACTION_MASK) == MotionEvent.ACTION_DOWN) {
+            //children have to be hit where they are drawn
+            stopRenderThreadFling();
+            //front-most child is found once, framework hit test of children reuses it
+            final int index = getChildIndexAt(ev.getX(), ev.getY());
+            mTouchDownPosition = index == -1 ? -1 : mLayout.getFirstPosition() + index;
+        }
+
+        return super.dispatchTouchEvent(ev);
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent ev) {
+
+        /*
          * This method JUST determines whether we want to intercept the motion.
          * If we return true, onTouchEvent will be called and we do the actual
          * scrolling there.
@@ -542,53 +2191,55 @@ public class Carousel extends ViewGroup {
          * state and he is moving his finger.  We want to intercept this
          * motion.
          */
-        final int action = ev.getAction();
+        if (!isEnabled()) return false;
+
+        final int action = ev.getAction() & MotionEvent.ACTION_MASK;
+        //events seen only here are not delivered to onTouchEvent, velocity of gesture taken over from child needs them
+        if (action != MotionEvent.ACTION_DOWN && mVelocityTracker != null) {
+            mVelocityTracker.addMovement(ev);
+        }
+
         if ((action == MotionEvent.ACTION_MOVE) && (mTouchState == TOUCH_STATE_SCROLLING)) {
             return true;
         }
 
-        final float x = ev.getX();
-        final float y = ev.getY();
         switch (action) {
             case MotionEvent.ACTION_MOVE:
                 /*
                  * not dragging, otherwise the shortcut would have caught it. Check
                  * whether the user has moved far enough from his original down touch.
                  */
+                if (mIsUnableToDrag) break;
 
-                /*
-                 * Locally do absolute value. mLastMotionX is set to the x value
-                 * of the down event.
-                 */
-                final int xDiff = (int)Math.abs(x - mLastMotionX);
-
-                final int touchSlop = mTouchSlop;
-                final boolean xMoved = xDiff > touchSlop;
-
-                if (xMoved) {
-                    // Scroll if the user moved far enough along the axis
-                    mTouchState = TOUCH_STATE_SCROLLING;
-                    enableChildrenCache();
-                    cancelLongPress();
-                }
+                final int pointerIndex = ev.findPointerIndex(mActivePointerId);
+                if (pointerIndex < 0) break;
 
+                checkStartDrag(ev, pointerIndex);
                 break;
 
             case MotionEvent.ACTION_DOWN:
-                // Remember location of down touch
-                mLastMotionX = x;
-
                 /*
                  * If being flinged and user touches the screen, initiate drag;
                  * otherwise don't.  mScroller.isFinished should be false when
                  * being flinged.
                  */
                 mTouchState = mScroller.isFinished() ? TOUCH_STATE_RESTING : TOUCH_STATE_SCROLLING;
+
+                //down consumed by child does not reach onTouchEvent, state of previous gesture is reset here
+                startGesture(ev);
+                break;
+
+            case MotionEvent.ACTION_POINTER_UP:
+                onSecondaryPointerUp(ev);
                 break;
 
             case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
                 mTouchState = TOUCH_STATE_RESTING;
+                mActivePointerId = INVALID_POINTER;
                 clearChildrenCache();
+                stopNestedScrollIfEnabled();
+                updateSelectionSettle();
                 break;
         }
 
@@ -596,150 +2247,650 @@ public class Carousel extends ViewGroup {
 
     }
 
+    /**
+     * Stops running scroll and resets state of previous gesture. Tap to center is allowed only when touch down
+     * did not stop running scroll.
+     */
+    private void startGesture(MotionEvent ev) {
+        stopRenderThreadFling();
+        mTapAllowed = mScroller.isFinished();
+        if (!mScroller.isFinished()) {
+            mScroller.forceFinished(true);
+        }
+
+        // Remember where the motion event started
+        onTouchDown(ev);
+        mPendingScrollDelta = 0;
+        mAppliedPrediction = 0;
+        mTouchVelocity = 0;
+
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        } else {
+            mVelocityTracker.clear();
+        }
+        mVelocityTracker.addMovement(ev);
+    }
+
+    private void onTouchDown(MotionEvent ev) {
+        mActivePointerId = ev.getPointerId(0);
+        mInitialMotionX = mLastMotionX = ev.getX();
+        mInitialMotionY = ev.getY();
+        mLastMotionTime = ev.getEventTime();
+        mIsUnableToDrag = false;
+
+        if (isNestedScrollEnabled()) {
+            startNestedScroll(SCROLL_AXIS_HORIZONTAL);
+        }
+    }
+
+    /**
+     * Decides by axis of movement, whether gesture is horizontal drag of this widget. Vertical gestures are left
+     * to parent for the rest of the gesture.
+     */
+    private boolean checkStartDrag(MotionEvent ev, int pointerIndex) {
+        final float x = ev.getX(pointerIndex);
+        final float xDiff = Math.abs(x - mInitialMotionX);
+        final float yDiff = Math.abs(ev.getY(pointerIndex) - mInitialMotionY);
+
+        if (xDiff > mTouchSlop && xDiff > yDiff) {
+            // Scroll if the user moved far enough along the axis
+            mTouchState = TOUCH_STATE_SCROLLING;
+            mLastMotionX = x;
+            enableChildrenCache();
+            cancelLongPress();
+
+            final ViewParent parent = getParent();
+            if (parent != null) {
+                parent.requestDisallowInterceptTouchEvent(true);
+            }
+            return true;
+        } else if (yDiff > mTouchSlop) {
+            mIsUnableToDrag = true;
+        }
+        return false;
+    }
+
+    private void onSecondaryPointerUp(MotionEvent ev) {
+        final int pointerIndex = ev.getActionIndex();
+        final int pointerId = ev.getPointerId(pointerIndex);
+        if (pointerId == mActivePointerId) {
+            // Active pointer is going up, choose new one and continue drag from its position
+            final int newPointerIndex = pointerIndex == 0 ? 1 : 0;
+            mActivePointerId = ev.getPointerId(newPointerIndex);
+            mLastMotionX = ev.getX(newPointerIndex);
+            mLastMotionTime = ev.getEventTime();
+            if (mVelocityTracker != null) {
+                mVelocityTracker.clear();
+            }
+        }
+    }
+
+    private boolean isNestedScrollEnabled() {
+        return android.os.Build.VERSION.SDK_INT >= 21 && isNestedScrollingEnabled();
+    }
+
+    private void stopNestedScrollIfEnabled() {
+        if (isNestedScrollEnabled()) {
+            stopNestedScroll();
+        }
+    }
+
     protected void scrollByDelta(int deltaX) {
+        final int overscroll = scrollWithinBounds(deltaX);
+        pullEdgeGlow(overscroll);
+    }
+
+    /**
+     * Scrolls by drag distance, but not over first or last item
+     *
+     * @param deltaX drag distance, it is divided by slow down coefficient
+     * @return distance in pixels which was not scrolled because edge was reached, negative on left edge
+     */
+    private int scrollWithinBounds(int deltaX) {
+        if (getChildCount() == 0) return 0;
+
         deltaX /= mSlowDownCoefficient;
 
-        final int centerItemLeft = getWidth() / 2 - mChildWidth / 2;
-        final int centerItemRight = getWidth() / 2 + mChildWidth / 2;
+        final int minX = getMinScrollX();
+        final int maxX = getMaxScrollX();
+        final int x = getScrollX() + deltaX;
+
+        int overscroll = 0;
+        if (x < minX) {
+            overscroll = x - minX;
+        } else if (x > maxX) {
+            overscroll = x - maxX;
+        }
+
+        scrollBy(deltaX - overscroll, 0);
+        return overscroll;
+    }
+
+    private void pullEdgeGlow(int overscroll) {
+        if (overscroll < 0) {
+            pullEdgeGlow(mEdgeGlowLeft, -overscroll);
+        } else if (overscroll > 0) {
+            pullEdgeGlow(mEdgeGlowRight, overscroll);
+        }
+    }
+
+    private void pullEdgeGlow(EdgeEffect glow, int overscroll) {
+        if (glow == null || getWidth() == 0) return;
+        glow.onPull((float) overscroll / getWidth());
+        invalidate();
+    }
+
+    private void releaseEdgeGlows() {
+        if (mEdgeGlowLeft == null) return;
+        mEdgeGlowLeft.onRelease();
+        mEdgeGlowRight.onRelease();
+    }
+
+    private void absorbEdgeGlow(int velocity) {
+        if (mEdgeGlowLeft == null || velocity == 0) return;
+        if (velocity < 0) mEdgeGlowLeft.onAbsorb(-velocity);
+        else mEdgeGlowRight.onAbsorb(velocity);
+        invalidate();
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        super.draw(canvas);
+
+        if (mEdgeGlowLeft == null) return;
+
+        final int width = getWidth();
+        final int height = getHeight();
+        boolean invalidate = false;
+        if (!mEdgeGlowLeft.isFinished()) {
+            final int restoreCount = canvas.save();
+            canvas.rotate(270);
+            canvas.translate(-height, getScrollX());
+            mEdgeGlowLeft.setSize(height, width);
+            invalidate = mEdgeGlowLeft.draw(canvas);
+            canvas.restoreToCount(restoreCount);
+        }
+        if (!mEdgeGlowRight.isFinished()) {
+            final int restoreCount = canvas.save();
+            canvas.rotate(90);
+            canvas.translate(0, -(getScrollX() + width));
+            mEdgeGlowRight.setSize(height, width);
+            invalidate |= mEdgeGlowRight.draw(canvas);
+            canvas.restoreToCount(restoreCount);
+        }
+        if (invalidate) invalidate();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        //disabled widget consumes touches without reacting, as other views do
+        if (!isEnabled()) return isClickable() || isLongClickable();
+
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        }
+        mVelocityTracker.addMovement(event);
+
+        final int action = event.getAction() & MotionEvent.ACTION_MASK;
+
+        switch (action) {
+            case MotionEvent.ACTION_DOWN:
+                //gesture was started by onInterceptTouchEvent, unless down was delivered here directly
+                if (mActivePointerId == INVALID_POINTER) {
+                    startGesture(event);
+                }
+                break;
+            case MotionEvent.ACTION_POINTER_DOWN: {
+                // New pointer takes over the drag
+                final int index = event.getActionIndex();
+                mActivePointerId = event.getPointerId(index);
+                mLastMotionX = event.getX(index);
+                mLastMotionTime = event.getEventTime();
+                break;
+            }
+            case MotionEvent.ACTION_MOVE: {
+                final int pointerIndex = event.findPointerIndex(mActivePointerId);
+                if (pointerIndex < 0) break;
+
+                if (mTouchState == TOUCH_STATE_SCROLLING) {
+                    // Scroll to follow the motion event, scroll is applied once per frame
+                    final float x = event.getX(pointerIndex);
+                    updateTouchVelocity(event, pointerIndex);
+                    mPendingScrollDelta += mLastMotionX - x;
+                    mLastMotionX = x;
+                    mLastMotionTime = event.getEventTime();
+
+                    scheduleScrollFrame();
+                } else if (!mIsUnableToDrag) {
+                    checkStartDrag(event, pointerIndex);
+                }
+                break;
+            }
+            case MotionEvent.ACTION_POINTER_UP:
+                onSecondaryPointerUp(event);
+                break;
+            case MotionEvent.ACTION_UP:
+                //if we had normal down click and we haven't moved enough to initiate drag, take action as a click on down coordinates
+                if (mTouchState == TOUCH_STATE_SCROLLING) {
+                    flushPendingScroll();
+                    releaseEdgeGlows();
+
+                    mVelocityTracker.computeCurrentVelocity(1000, mMaximumVelocity);
+                    int initialXVelocity = (int)mVelocityTracker.getXVelocity(mActivePointerId);
+                    int initialYVelocity = (int)mVelocityTracker.getYVelocity(mActivePointerId);
+
+                    if (Math.abs(initialXVelocity) + Math.abs(initialYVelocity) > mMinimumVelocity
+                        && !dispatchNestedPreFlingIfEnabled(-initialXVelocity, -initialYVelocity)) {
+                        if (isNestedScrollEnabled()) {
+                            dispatchNestedFling(-initialXVelocity, -initialYVelocity, true);
+                        }
+                        fling(-initialXVelocity, -initialYVelocity);
+                    } else {
+                        // Release the drag
+                        clearChildrenCache();
+                        mTouchState = TOUCH_STATE_RESTING;
+                        updateSelectionSettle();
+                    }
+
+                    if (mVelocityTracker != null) {
+                        mVelocityTracker.recycle();
+                        mVelocityTracker = null;
+                    }
+
+                    mActivePointerId = INVALID_POINTER;
+                    stopNestedScrollIfEnabled();
+                    break;
+                }
+
+                // Release the drag
+                clearChildrenCache();
+                mTouchState = TOUCH_STATE_RESTING;
+                mActivePointerId = INVALID_POINTER;
+                releaseEdgeGlows();
+                stopNestedScrollIfEnabled();
+                updateSelectionSettle();
+
+                if (mTapAllowed && mTouchDownPosition != -1 && mTouchDownPosition != mSelection) {
+                    final int index = getChildIndexAt(event.getX(), event.getY());
+                    if (index != -1 && mLayout.getFirstPosition() + index == mTouchDownPosition) {
+                        performItemTap(mTouchDownPosition);
+                    }
+                }
+
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                flushPendingScroll();
+                mTouchState = TOUCH_STATE_RESTING;
+                mActivePointerId = INVALID_POINTER;
+                releaseEdgeGlows();
+                stopNestedScrollIfEnabled();
+                updateSelectionSettle();
+        }
+
+        return true;
+    }
+
+    private boolean dispatchNestedPreFlingIfEnabled(int velocityX, int velocityY) {
+        return isNestedScrollEnabled() && dispatchNestedPreFling(velocityX, velocityY);
+    }
+
+    /**
+     * Estimates finger velocity from historical samples batched in move event.
+     * All samples are also fed to velocity tracker by {@link VelocityTracker#addMovement(MotionEvent)}.
+     */
+    private void updateTouchVelocity(MotionEvent event, int pointerIndex) {
+        float fromX = mLastMotionX;
+        long fromTime = mLastMotionTime;
+        final int historySize = event.getHistorySize();
+        if (historySize > 0) {
+            fromX = event.getHistoricalX(pointerIndex, 0);
+            fromTime = event.getHistoricalEventTime(0);
+        }
+
+        final long dt = event.getEventTime() - fromTime;
+        if (dt > 0) {
+            mTouchVelocity = (event.getX(pointerIndex) - fromX) / dt;
+        }
+    }
+
+    private void scheduleScrollFrame() {
+        if (mScrollFrameScheduled) return;
+        mScrollFrameScheduled = true;
+        //replay applies pending scroll in its own frames, its thread may have no looper for choreographer
+        if (mRenderingOffscreen || Looper.myLooper() == null) return;
+
+        if (android.os.Build.VERSION.SDK_INT >= 16) {
+            if (mScrollFrameCallback == null) {
+                mScrollFrameCallback = new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        applyPendingScroll();
+                    }
+                };
+            }
+            Choreographer.getInstance().postFrameCallback(mScrollFrameCallback);
+        } else {
+            post(mScrollFrameRunnable);
+        }
+    }
+
+    private void cancelScrollFrame() {
+        if (!mScrollFrameScheduled) return;
+        mScrollFrameScheduled = false;
+        if (mRenderingOffscreen || Looper.myLooper() == null) return;
 
-        final int rightInPixels;
-        final int leftInPixels;
-        if (mRightEdge == NO_VALUE) {
-            rightInPixels = Integer.MAX_VALUE;
+        if (android.os.Build.VERSION.SDK_INT >= 16) {
+            Choreographer.getInstance().removeFrameCallback(mScrollFrameCallback);
         } else {
-            rightInPixels = mRightEdge;
+            removeCallbacks(mScrollFrameRunnable);
+        }
+    }
+
+    /**
+     * Applies all touch moves received since last frame as single scroll update
+     */
+    private void applyPendingScroll() {
+        mScrollFrameScheduled = false;
+
+        final int delta = (int) mPendingScrollDelta;
+        mPendingScrollDelta -= delta;
+
+        int prediction = 0;
+        if (mTouchPredictionEnabled && mTouchState == TOUCH_STATE_SCROLLING) {
+            prediction = Math.round(-mTouchVelocity * TOUCH_PREDICTION_TIME);
+        }
+
+        final int predictionDelta = prediction - mAppliedPrediction;
+        mAppliedPrediction = prediction;
+        if (delta != 0 || predictionDelta != 0) {
+            scrollByDeltaNested(delta, predictionDelta);
+        }
+    }
+
+    /**
+     * Offers scroll to nested scrolling parent first, and passes part which could not be consumed by this widget back
+     * to it. Distances exchanged with parent are in units of drag distance, before slow down coefficient.
+     *
+     * @param deltaX      drag distance of finger
+     * @param predictionX change of predicted distance, it is applied only to this widget, as parent can not take it back
+     */
+    private void scrollByDeltaNested(int deltaX, int predictionX) {
+        if (!isNestedScrollEnabled()) {
+            scrollByDelta(deltaX + predictionX);
+            return;
         }
 
-        if (mLeftEdge == NO_VALUE) {
-            leftInPixels = Integer.MIN_VALUE + getWidth(); //we cant have min value because of integer overflow
-        } else {
-            leftInPixels = mLeftEdge;
+        if (deltaX != 0 && dispatchNestedPreScroll(deltaX, 0, mNestedScrollConsumed, null)) {
+            deltaX -= mNestedScrollConsumed[0];
+        }
+        final int overscroll = scrollWithinBounds(deltaX + predictionX);
+
+        //only drag distance which hit the edge is offered to parent, not rounding of slow down or prediction
+        int unconsumed = overscroll * mSlowDownCoefficient;
+        if (unconsumed * deltaX <= 0) {
+            unconsumed = 0;
+        } else if (Math.abs(unconsumed) > Math.abs(deltaX)) {
+            unconsumed = deltaX;
         }
 
-        final int x = getScrollX() + deltaX;
+        if (!dispatchNestedScroll(deltaX - unconsumed, 0, unconsumed, 0, null)) {
+            //no parent took the rest, edge is shown by glow
+            pullEdgeGlow(overscroll);
+        }
+    }
 
-        if (x < (leftInPixels - centerItemLeft)) {
-            deltaX -= x - (leftInPixels - centerItemLeft);
-        } else if (x > rightInPixels - centerItemRight) {
-            deltaX -= x - (rightInPixels - centerItemRight);
+    /**
+     * Applies moves which are waiting for next frame immediately and removes predicted distance
+     */
+    private void flushPendingScroll() {
+        cancelScrollFrame();
+
+        final int deltaX = (int) mPendingScrollDelta;
+        final int predictionDelta = -mAppliedPrediction;
+        mPendingScrollDelta = 0;
+        mAppliedPrediction = 0;
+        if (deltaX != 0 || predictionDelta != 0) {
+            scrollByDeltaNested(deltaX, predictionDelta);
         }
+    }
 
-        scrollBy(deltaX, 0);
+    /**
+     * Enables extrapolation of drag by finger velocity, which reduces perceived lag of content behind finger
+     */
+    public void setTouchPredictionEnabled(boolean enabled) {
+        mTouchPredictionEnabled = enabled;
     }
 
-    @Override
-    public boolean onTouchEvent(MotionEvent event) {
-        if (mVelocityTracker == null) {
-            mVelocityTracker = VelocityTracker.obtain();
-        }
-        mVelocityTracker.addMovement(event);
+    public void fling(int velocityX, int velocityY) {
+        if (getChildCount() == 0) return;
 
-        final int action = event.getAction();
-        final float x = event.getX();
-        final float y = event.getY();
+        velocityX /= mSlowDownCoefficient;
 
-        switch (action) {
-            case MotionEvent.ACTION_DOWN:
-            /*
-             * If being flinged and user touches, stop the fling. isFinished
-             * will be false if being flinged.
-             */
-                if (!mScroller.isFinished()) {
-                    mScroller.forceFinished(true);
-                }
+        stopRenderThreadFling();
+        mTouchState = TOUCH_STATE_FLING;
+        mScroller.fling(getScrollX(), velocityX, getMinScrollX(), getMaxScrollX());
+        if (canFlingOnRenderThread()) startRenderThreadFling();
 
-                // Remember where the motion event started
-                mLastMotionX = x;
+        invalidate();
+    }
 
-                break;
-            case MotionEvent.ACTION_MOVE:
+    /**
+     * Hands fling to render thread of hardware accelerated widget on API 21+. Whole trajectory of fling is known when
+     * it starts, so curves of rotation, translation, scale and alpha of every child are sampled once and animated
+     * by {@link ViewPropertyAnimator}, which runs on render thread. Fling then continues smoothly even when UI thread
+     * is busy. UI thread still adds children entering the screen and hands their curves to render thread too,
+     * and updates drawing order, so these wait for UI thread. Item visibility and playback slots are updated when
+     * fling ends or is stopped.
+     * <p>
+     * On older API, without hardware acceleration, or when widget has no transformer, flings are driven by UI thread
+     * as before.
+     */
+    public void setRenderThreadFlingEnabled(boolean enabled) {
+        mRenderThreadFlingEnabled = enabled;
+        if (!enabled) stopRenderThreadFling();
+    }
 
-                if (mTouchState == TOUCH_STATE_SCROLLING) {
-                    // Scroll to follow the motion event
-                    final int deltaX = (int)(mLastMotionX - x);
-                    mLastMotionX = x;
+    public boolean isRenderThreadFlingEnabled() {
+        return mRenderThreadFlingEnabled;
+    }
 
-                    scrollByDelta(deltaX);
-                } else {
-                    final int xDiff = (int)Math.abs(x - mLastMotionX);
+    /**
+     * @return true while children are animated by render thread, their view properties do not reflect what is drawn
+     */
+    protected boolean isFlingOnRenderThread() {
+        return mRenderThreadFling;
+    }
 
-                    final int touchSlop = mTouchSlop;
-                    final boolean xMoved = xDiff > touchSlop;
+    private boolean canFlingOnRenderThread() {
+        return mRenderThreadFlingEnabled && android.os.Build.VERSION.SDK_INT >= 21 && isHardwareAccelerated()
+            && mTransformer != null && !mRenderingOffscreen && !mScroller.isFinished();
+    }
 
+    private void startRenderThreadFling() {
+        mRenderThreadFling = true;
+        mRenderThreadFlingStartX = getScrollX();
+        final int elapsed = mScroller.timePassed();
+        for (int i = 0; i < getChildCount(); i++) {
+            animateChildOnRenderThread(i, elapsed);
+        }
+    }
 
-                    if (xMoved) {
-                        // Scroll if the user moved far enough along the axis
-                        mTouchState = TOUCH_STATE_SCROLLING;
-                        enableChildrenCache();
-                        cancelLongPress();
-                    }
-                }
-                break;
-            case MotionEvent.ACTION_UP:
-                //if we had normal down click and we haven't moved enough to initiate drag, take action as a click on down coordinates
-                if (mTouchState == TOUCH_STATE_SCROLLING) {
+    /**
+     * Samples transformation of child for the rest of fling and starts its animations. Scroll offset of widget
+     * does not move, so motion of fling is added to translation.
+     */
+    private void animateChildOnRenderThread(int index, int elapsed) {
+        final int remaining = mScroller.getDuration() - elapsed;
+        if (remaining <= 0) return;
+
+        final int samples = Math.max(2, remaining / RENDER_THREAD_SAMPLE_INTERVAL) + 1;
+        final float[] rotation = new float[samples];
+        final float[] translation = new float[samples];
+        final float[] scale = new float[samples];
+        final float[] alpha = new float[samples];
+
+        final CarouselTransformer.Transform t = mTransform;
+        final int childCenter = mLayout.getCenterAt(index);
+        final int half = getWidth() / 2;
+        for (int i = 0; i < samples; i++) {
+            final int x = mScroller.getPositionAt(elapsed + (int) ((long) remaining * i / (samples - 1)));
+            t.reset();
+            mTransformer.transform(this, (childCenter - (x + half)) / ((float) half), t);
+            rotation[i] = t.rotationY;
+            translation[i] = t.translationX - (x - mRenderThreadFlingStartX);
+            scale[i] = t.scale;
+            alpha[i] = t.alpha;
+        }
 
-                    mVelocityTracker.computeCurrentVelocity(1000, mMaximumVelocity);
-                    int initialXVelocity = (int)mVelocityTracker.getXVelocity();
-                    int initialYVelocity = (int)mVelocityTracker.getYVelocity();
+        final View v = getChildAt(index);
+        mTransformGeneration++;
+        v.setRotationY(rotation[0]);
+        v.setTranslationX(translation[0]);
+        v.setScaleX(scale[0]);
+        v.setScaleY(scale[0]);
+        v.setAlpha(alpha[0]);
+
+        //every property follows its own curve, so it is started as separate animation with its own interpolator
+        CurveInterpolator curve = new CurveInterpolator(rotation);
+        startCurve(v, remaining, curve).rotationY(curve.getEndValue()).start();
+        curve = new CurveInterpolator(translation);
+        startCurve(v, remaining, curve).translationX(curve.getEndValue()).start();
+        curve = new CurveInterpolator(scale);
+        startCurve(v, remaining, curve).scaleX(curve.getEndValue()).scaleY(curve.getEndValue()).start();
+        curve = new CurveInterpolator(alpha);
+        startCurve(v, remaining, curve).alpha(curve.getEndValue()).start();
+    }
 
-                    if (Math.abs(initialXVelocity) + Math.abs(initialYVelocity) > mMinimumVelocity) {
-                        fling(-initialXVelocity, -initialYVelocity);
-                    } else {
-                        // Release the drag
-                        clearChildrenCache();
-                        mTouchState = TOUCH_STATE_RESTING;
-                    }
+    private static ViewPropertyAnimator startCurve(View v, int duration, CurveInterpolator curve) {
+        return v.animate().setDuration(duration).setStartDelay(0).setInterpolator(curve);
+    }
 
-                    if (mVelocityTracker != null) {
-                        mVelocityTracker.recycle();
-                        mVelocityTracker = null;
-                    }
+    /**
+     * Called by UI thread in every frame of fling animated by render thread. Children are added and removed by
+     * where the fling is now and children which entered the screen are animated for the rest of fling.
+     */
+    private void computeRenderThreadFling() {
+        final int first = mLayout.getFirstPosition();
+        final int last = mLayout.getLastPosition();
+        refill();
+        updateReverseOrderIndex();
 
-                    break;
-                }
+        final int elapsed = mScroller.timePassed();
+        for (int i = 0; i < getChildCount(); i++) {
+            final int position = mLayout.getFirstPosition() + i;
+            if (position < first || position > last) {
+                animateChildOnRenderThread(i, elapsed);
+            }
+        }
+    }
 
-                // Release the drag
-                clearChildrenCache();
-                mTouchState = TOUCH_STATE_RESTING;
+    /**
+     * Returns fling animated by render thread back to UI thread. Scroll offset of widget moves to where fling is now
+     * and children are transformed by UI thread again.
+     */
+    private void stopRenderThreadFling() {
+        if (!mRenderThreadFling) return;
+        mRenderThreadFling = false;
 
-                break;
-            case MotionEvent.ACTION_CANCEL:
-                mTouchState = TOUCH_STATE_RESTING;
+        for (int i = 0; i < getChildCount(); i++) {
+            getChildAt(i).animate().cancel();
         }
+        mScroller.computeScrollOffset();
+        scrollTo(mScroller.getCurrX(), 0);
+        refill();
+        updateReverseOrderIndex();
+        if (mTransformer != null) {
+            applyTransformations();
+        }
+    }
 
-        return true;
+    /**
+     * @return scroll offset by which children are laid out, while fling is animated by render thread it is where
+     * the fling is now, not scroll offset of widget
+     */
+    private int getLayoutScrollX() {
+        return mRenderThreadFling ? mScroller.getCurrX() : getScrollX();
     }
 
-    public void fling(int velocityX, int velocityY) {
-        velocityX /= mSlowDownCoefficient;
+    /**
+     * Interpolator following sampled curve of one property. Animation from first sample to {@link #getEndValue()}
+     * passes through all samples. Curves ending where they started, like scale of child passing through center,
+     * are animated over unit range, as animation needs different start and end value.
+     */
+    private static final class CurveInterpolator implements TimeInterpolator {
+        private final float[] mValues;
+        private final float mStart;
+        private final float mRange;
+
+        CurveInterpolator(float[] values) {
+            mValues = values;
+            mStart = values[0];
+            final float range = values[values.length - 1] - mStart;
+            mRange = Math.abs(range) > 0.001f ? range : 1f;
+        }
 
-        mTouchState = TOUCH_STATE_FLING;
-        final int x = getScrollX();
-        final int y = getScrollY();
+        float getEndValue() {
+            return mStart + mRange;
+        }
+
+        @Override
+        public float getInterpolation(float input) {
+            final float position = Math.max(0f, Math.min(1f, input)) * (mValues.length - 1);
+            final int i = Math.min(mValues.length - 2, (int) position);
+            final float value = mValues[i] + (mValues[i + 1] - mValues[i]) * (position - i);
+            return (value - mStart) / mRange;
+        }
+    }
+
+    /**
+     * End position of fling is known when it starts, so items around it can be prepared in advance.
+     *
+     * @return adapter position of item which will be in center when current fling ends, or -1 if widget is not flinging
+     */
+    public int getFlingTargetPosition() {
+        if (mTouchState != TOUCH_STATE_FLING || mScroller.isFinished() || getChildCount() == 0) return -1;
 
-        final int centerItemLeft = getWidth() / 2 - mChildWidth / 2;
-        final int centerItemRight = getWidth() / 2 + mChildWidth / 2;
-        final int rightInPixels;
-        final int leftInPixels;
-        if (mRightEdge == NO_VALUE) rightInPixels = Integer.MAX_VALUE;
-        else rightInPixels = mRightEdge;
-        if (mLeftEdge == NO_VALUE) leftInPixels = Integer.MIN_VALUE + getWidth();
-        else leftInPixels = mLeftEdge;
+        final int stride = mLayout.getStride();
+        if (stride <= 0) return -1;
 
-        mScroller.fling(x, y, velocityX, velocityY, leftInPixels - centerItemLeft,
-            rightInPixels - centerItemRight + 1, 0, 0);
+        final int distance = mScroller.getFinalX() + getWidth() / 2 - mLayout.getItemCenter(mLayout.getFirstPosition());
+        final int position = mLayout.getFirstPosition() + Math.round((float) distance / stride);
+        return Math.max(0, Math.min(getItemCount() - 1, position));
+    }
 
-        invalidate();
+    /**
+     * @return duration of current fling in milliseconds, 0 if widget is not flinging
+     */
+    public int getFlingDuration() {
+        if (mTouchState != TOUCH_STATE_FLING || mScroller.isFinished()) return 0;
+        return mScroller.getDuration();
+    }
+
+    /**
+     * @return absolute value of current fling velocity in pixels per second, 0 if widget is not flinging
+     */
+    protected float getFlingVelocity() {
+        if (mTouchState != TOUCH_STATE_FLING || mScroller.isFinished()) return 0;
+        return Math.abs(mScroller.getCurrVelocity());
     }
 
     private void enableChildrenCache() {
+        if (isChildrenDrawnWithCacheEnabled()) return;
         setChildrenDrawnWithCacheEnabled(true);
-        setChildrenDrawingCacheEnabled(true);
+        updateChildrenDrawingCache();
     }
 
     private void clearChildrenCache() {
+        if (!isChildrenDrawnWithCacheEnabled()) return;
         setChildrenDrawnWithCacheEnabled(false);
+        updateChildrenDrawingCache();
+    }
+
+    private void updateChildrenDrawingCache() {
+        for (int i = 0; i < getChildCount(); i++) {
+            updateItemDrawingCache(getChildAt(i));
+        }
     }
 
     /**
@@ -751,6 +2902,47 @@ public class Carousel extends ViewGroup {
         this.mSpacing = spacing;
     }
 
+    public float getSpacing() {
+        return mSpacing;
+    }
+
+    public int getChildWidth() {
+        return mChildWidth;
+    }
+
+    public int getChildHeight() {
+        return mChildHeight;
+    }
+
+    /**
+     * Sets visual effect applied on children
+     *
+     * @param transformer transformer or null to show children without transformation
+     */
+    public void setTransformer(CarouselTransformer transformer) {
+        stopRenderThreadFling();
+        mTransformer = transformer;
+
+        if (transformer == null) {
+            mTransformGeneration++;
+            final CarouselTransformer.Transform t = mTransform;
+            t.reset();
+            for (int i = 0; i < getChildCount(); i++) {
+                final View v = getChildAt(i);
+                v.setRotationY(t.rotationY);
+                v.setTranslationX(t.translationX);
+                v.setScaleX(t.scale);
+                v.setScaleY(t.scale);
+                v.setAlpha(t.alpha);
+            }
+        }
+        invalidate();
+    }
+
+    public CarouselTransformer getTransformer() {
+        return mTransformer;
+    }
+
     public void setChildWidth(int width) {
         mChildWidth = width;
     }
@@ -759,6 +2951,19 @@ public class Carousel extends ViewGroup {
         mChildHeight = height;
     }
 
+    /**
+     * Sets how fast fling slows down. Velocity of fling decays by factor e^(-friction) every second.
+     *
+     * @param friction decay rate of fling velocity, must be greater than 0
+     */
+    public void setFlingFriction(float friction) {
+        mScroller.setFriction(friction);
+    }
+
+    public float getFlingFriction() {
+        return mScroller.getFriction();
+    }
+
     public void setSlowDownCoefficient(int c) {
         if(c < 1) throw new IllegalArgumentException("Slowdown coeficient must be greater than 0");
         mSlowDownCoefficient = c;
@@ -772,11 +2977,211 @@ public class Carousel extends ViewGroup {
         void onItemSelected(View child, int position);
     }
 
+    /**
+     * Sets when item selected listener is called during scrolling. Fling over many items calls listener on every
+     * item in immediate mode, which is expensive if listener starts loading of content.
+     *
+     * @param mode one of {@link #SELECTION_DISPATCH_IMMEDIATE}, {@link #SELECTION_DISPATCH_PER_FRAME},
+     *             {@link #SELECTION_DISPATCH_ON_SETTLE}
+     */
+    public void setSelectionDispatchMode(int mode) {
+        if (mode < SELECTION_DISPATCH_IMMEDIATE || mode > SELECTION_DISPATCH_ON_SETTLE)
+            throw new IllegalArgumentException("Unknown selection dispatch mode " + mode);
+        mSelectionDispatchMode = mode;
+    }
+
+    public int getSelectionDispatchMode() {
+        return mSelectionDispatchMode;
+    }
+
+    /**
+     * Sets how long widget has to rest before selection is reported as settled. Scroll started within this time
+     * cancels the report, so quick consecutive flings report only final item.
+     *
+     * @param delay delay in milliseconds, 0 to report selection as soon as widget stops
+     */
+    public void setSelectionSettleDelay(int delay) {
+        if (delay < 0) throw new IllegalArgumentException("Settle delay must not be negative");
+        mSelectionSettleDelay = delay;
+    }
+
+    public void setOnSelectionSettledListener(OnSelectionSettledListener onSelectionSettledListener) {
+        mOnSelectionSettledListener = onSelectionSettledListener;
+    }
+
+    /**
+     * Called when scrolling stops and item in center did not change for settle delay
+     */
+    public interface OnSelectionSettledListener {
+        void onSelectionSettled(View child, int position);
+    }
+
+    /**
+     * Sets listener notified about visibility of items as they move. Adapter can implement the listener to load
+     * high resolution content only for items near center and cancel loads of items which were hidden.
+     */
+    public void setOnItemVisibilityChangedListener(OnItemVisibilityChangedListener listener) {
+        hideReportedItems();
+        mOnItemVisibilityChangedListener = listener;
+        invalidate();
+    }
+
+    /**
+     * Sets pool of players which play content of items nearest to center, for example video previews. Playback
+     * follows center as widget scrolls and is paused during fling. Previous pool is released.
+     *
+     * @param pool pool of players or null to stop playback
+     */
+    public void setPlaybackSlotPool(PlaybackSlotPool<?> pool) {
+        if (mPlaybackSlotPool != null) mPlaybackSlotPool.releaseAll();
+        mPlaybackSlotPool = pool;
+        invalidate();
+    }
+
+    public PlaybackSlotPool<?> getPlaybackSlotPool() {
+        return mPlaybackSlotPool;
+    }
+
+    /**
+     * Attaches queue through which items of adapter are changed from any thread. Changes are applied once per frame
+     * as one batch, which relayouts only affected children instead of resetting widget. Adapter has to read its items
+     * from the queue.
+     *
+     * @param queue queue of changes or null to detach current queue
+     */
+    public void setChangeQueue(CarouselChangeQueue<?> queue) {
+        if (mChangeQueue != null) mChangeQueue.attach(null);
+        mChangeQueue = queue;
+        if (queue != null) queue.attach(this);
+    }
+
+    public CarouselChangeQueue<?> getChangeQueue() {
+        return mChangeQueue;
+    }
+
+    /**
+     * @param threshold minimal change of visible fraction or distance from center which is reported, 0 reports
+     *                  every change
+     */
+    public void setVisibilityChangeThreshold(float threshold) {
+        if (threshold < 0) throw new IllegalArgumentException("Threshold must not be negative");
+        mVisibilityChangeThreshold = threshold;
+    }
+
+    public interface OnItemVisibilityChangedListener {
+        /**
+         * Called when item is laid out first time and then whenever its visibility changes by more than threshold
+         *
+         * @param child              view of item
+         * @param position           position of item
+         * @param visibleFraction    visible part of item in range 0 to 1
+         * @param distanceFromCenter distance of item center from widget center, 0 in center, 1 on widget edge
+         */
+        void onItemVisibilityChanged(View child, int position, float visibleFraction, float distanceFromCenter);
+
+        /**
+         * Called when item is removed from layout, its view is going to be reused for other item
+         */
+        void onItemHidden(int position);
+    }
+
+    /**
+     * Column of items from all lanes, stacked vertically. Item views are recycled by their lane.
+     */
+    private class LaneColumn extends LinearLayout {
+
+        LaneColumn(Context context) {
+            super(context);
+            setOrientation(VERTICAL);
+        }
+
+        void bind(int position) {
+            final int count = mAdapter.getCount();
+            for (int lane = 0; lane < mLaneCount; lane++) {
+                final int adapterPosition = getAdapterPosition(position, lane);
+                final View current = lane < getChildCount() ? getChildAt(lane) : null;
+
+                View v;
+                if (adapterPosition < count) {
+                    v = mAdapter.getView(adapterPosition, current instanceof Space ? null : current, this);
+                    v.setVisibility(VISIBLE);
+                } else if (current != null) {
+                    //last column is not full, keep view for next bind
+                    v = current;
+                    v.setVisibility(INVISIBLE);
+                } else {
+                    v = new Space(getContext());
+                }
+
+                final float weight = mLaneWeights != null ? mLaneWeights[lane] : 1;
+                LinearLayout.LayoutParams lp = v.getLayoutParams() instanceof LinearLayout.LayoutParams
+                    ? (LinearLayout.LayoutParams) v.getLayoutParams() : null;
+                if (lp == null || lp.height != 0 || lp.weight != weight) {
+                    lp = new LinearLayout.LayoutParams(LayoutParams.MATCH_PARENT, 0, weight);
+                    v.setLayoutParams(lp);
+                }
+
+                if (v != current) {
+                    if (current != null) removeViewAt(lane);
+                    if (v.getParent() instanceof ViewGroup) ((ViewGroup) v.getParent()).removeView(v);
+                    addView(v, lane);
+                }
+            }
+        }
+    }
+
+    static class SavedState extends BaseSavedState {
+        int selection;
+        int offset;
+        long itemId;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            selection = in.readInt();
+            offset = in.readInt();
+            itemId = in.readLong();
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeInt(selection);
+            out.writeInt(offset);
+            out.writeLong(itemId);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
     protected static class ViewCache<T extends View> {
         private final LinkedList<WeakReference<T>> mCachedItemViews = new LinkedList<WeakReference<T>>();
+        /**
+         * Views created ahead of time by warm up by position to which they are bound. They are held strongly,
+         * until they are used for first time.
+         */
+        private final SparseArray<T> mPreparedItemViews = new SparseArray<T>();
+        /**
+         * Prepared views which are no longer bound to valid position, held strongly until they are used.
+         */
+        private final LinkedList<T> mUnboundItemViews = new LinkedList<T>();
 
         /**
-         * Check if list of weak references has any view still in memory to offer for recycling
+         * Check if list of weak references has any view still in memory to offer for recycling.
+         * If not, view prepared by warm up is returned to be bound again.
          *
          * @return cached view
          */
@@ -787,14 +3192,103 @@ public class Carousel extends ViewGroup {
                     v = mCachedItemViews.removeFirst().get();
                 }
                 while (v == null && mCachedItemViews.size() != 0);
+                if (v != null) return v;
+            }
+            if (mUnboundItemViews.size() != 0) {
+                return mUnboundItemViews.removeFirst();
+            }
+            if (mPreparedItemViews.size() != 0) {
+                //farthest prepared position is needed last
+                final int last = mPreparedItemViews.size() - 1;
+                final T v = mPreparedItemViews.valueAt(last);
+                mPreparedItemViews.removeAt(last);
                 return v;
             }
             return null;
         }
 
+        /**
+         * @param position position to which view is bound
+         */
+        public void cachePreparedView(int position, T v) {
+            mPreparedItemViews.put(position, v);
+        }
+
+        public boolean hasPreparedView(int position) {
+            return mPreparedItemViews.get(position) != null;
+        }
+
+        /**
+         * @return view prepared for given position and removes it from cache, or null if there is none
+         */
+        public T getPreparedView(int position) {
+            final T v = mPreparedItemViews.get(position);
+            if (v != null) mPreparedItemViews.remove(position);
+            return v;
+        }
+
+        /**
+         * Marks prepared views as unbound after positions of items changed, they are bound again when used.
+         */
+        public void unbindPreparedViews() {
+            for (int i = 0; i < mPreparedItemViews.size(); i++) {
+                mUnboundItemViews.addLast(mPreparedItemViews.valueAt(i));
+            }
+            mPreparedItemViews.clear();
+        }
+
         public void cacheView(T v) {
             WeakReference<T> ref = new WeakReference<T>(v);
             mCachedItemViews.addLast(ref);
         }
+
+        /**
+         * @return number of views in cache, including recycled views which might be already garbage collected
+         */
+        public int size() {
+            return mCachedItemViews.size() + mPreparedItemViews.size() + mUnboundItemViews.size();
+        }
+
+        /**
+         * Drops oldest views until cache has at most given size. Prepared views are dropped first, farthest
+         * positions before nearer ones.
+         *
+         * @param size maximal number of views left in cache
+         */
+        public void trimToSize(int size) {
+            while (mUnboundItemViews.size() != 0 && size() > size) {
+                mUnboundItemViews.removeFirst();
+            }
+            while (mPreparedItemViews.size() != 0 && size() > size) {
+                mPreparedItemViews.removeAt(mPreparedItemViews.size() - 1);
+            }
+            while (mCachedItemViews.size() != 0 && size() > size) {
+                mCachedItemViews.removeFirst();
+            }
+        }
+
+        public void clear() {
+            mCachedItemViews.clear();
+            mPreparedItemViews.clear();
+            mUnboundItemViews.clear();
+        }
+
+        /**
+         * Collects views in cache which are still in memory
+         *
+         * @param out list to which views are added
+         * @return out list
+         */
+        public List<T> getCachedViews(List<T> out) {
+            for (WeakReference<T> ref : mCachedItemViews) {
+                final T v = ref.get();
+                if (v != null) out.add(v);
+            }
+            for (int i = 0; i < mPreparedItemViews.size(); i++) {
+                out.add(mPreparedItemViews.valueAt(i));
+            }
+            out.addAll(mUnboundItemViews);
+            return out;
+        }
     }
 }
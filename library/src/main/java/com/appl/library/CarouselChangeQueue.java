@@ -0,0 +1,269 @@
+package com.appl.library;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * List of carousel items which can be changed from any thread. Inserts, removes and updates are only put into
+ * lock-free queue by calling thread. Queue is applied on UI thread once per frame as one batch, so burst of changes
+ * costs one incremental relayout of {@link Carousel} instead of reset for every change.
+ * <p>
+ * Items are read by adapter of carousel through {@link #size()} and {@link #get(int)} on UI thread. Adapter must not
+ * call notifyDataSetChanged for changes made through queue, carousel is updated by queue itself.
+ * <p>
+ * Positions of changes are resolved when batch is applied, against items as changed by all previous changes.
+ * Insert after end of list appends item, remove or update of position which does not exist anymore is ignored.
+ *
+ * @param <T> type of items
+ * @author Martin Appl
+ */
+public class CarouselChangeQueue<T> {
+    private static final int TYPE_INSERT = 0;
+    private static final int TYPE_REMOVE = 1;
+    private static final int TYPE_UPDATE = 2;
+
+    /**
+     * Position of insert which appends item
+     */
+    private static final int END = -1;
+
+    private static final class Change {
+        final int type;
+        final int position;
+        final Object item;
+
+        Change(int type, int position, Object item) {
+            this.type = type;
+            this.position = position;
+            this.item = item;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Change> mPending = new ConcurrentLinkedQueue<>();
+    /**
+     * True when applying of pending changes is scheduled, so only first change of batch posts to UI thread
+     */
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+    /**
+     * Runs tasks on UI thread
+     */
+    private final Executor mMainExecutor;
+
+    //accessed only on UI thread
+    private final ArrayList<T> mItems;
+    private Target mTarget;
+
+    private final Runnable mScheduleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            //changes are applied with next frame, so all changes posted until then end in the same batch
+            if (mTarget == null) {
+                applyPendingChanges();
+            } else {
+                mTarget.postOnNextFrame(mApplyRunnable);
+            }
+        }
+    };
+
+    private final Runnable mApplyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            applyPendingChanges();
+        }
+    };
+
+    public CarouselChangeQueue() {
+        this(new MainThreadExecutor(), new ArrayList<T>());
+    }
+
+    /**
+     * @param items initial items, they are available immediately
+     */
+    public CarouselChangeQueue(Collection<? extends T> items) {
+        this(new MainThreadExecutor(), items);
+    }
+
+    /**
+     * @param mainExecutor executor running tasks on UI thread
+     * @param items initial items, they are available immediately
+     */
+    CarouselChangeQueue(Executor mainExecutor, Collection<? extends T> items) {
+        mMainExecutor = mainExecutor;
+        mItems = new ArrayList<>(items);
+    }
+
+    /**
+     * Appends item to end of list. Can be called from any thread.
+     */
+    public void add(T item) {
+        enqueue(new Change(TYPE_INSERT, END, item));
+    }
+
+    /**
+     * Inserts item on position. Can be called from any thread.
+     */
+    public void insert(int position, T item) {
+        if (position < 0) throw new IllegalArgumentException("Position must not be negative");
+        enqueue(new Change(TYPE_INSERT, position, item));
+    }
+
+    /**
+     * Removes item on position. Can be called from any thread.
+     */
+    public void remove(int position) {
+        if (position < 0) throw new IllegalArgumentException("Position must not be negative");
+        enqueue(new Change(TYPE_REMOVE, position, null));
+    }
+
+    /**
+     * Replaces item on position. Can be called from any thread.
+     */
+    public void update(int position, T item) {
+        if (position < 0) throw new IllegalArgumentException("Position must not be negative");
+        enqueue(new Change(TYPE_UPDATE, position, item));
+    }
+
+    private void enqueue(Change change) {
+        mPending.offer(change);
+        if (mScheduled.compareAndSet(false, true)) {
+            mMainExecutor.execute(mScheduleRunnable);
+        }
+    }
+
+    /**
+     * @return number of items with all applied changes, call only on UI thread
+     */
+    public int size() {
+        return mItems.size();
+    }
+
+    /**
+     * @return item with all applied changes, call only on UI thread
+     */
+    public T get(int position) {
+        return mItems.get(position);
+    }
+
+    void attach(Carousel carousel) {
+        setTarget(carousel == null ? null : new CarouselTarget(carousel));
+    }
+
+    void setTarget(Target target) {
+        mTarget = target;
+    }
+
+    /**
+     * Applies all pending changes now, without waiting for next frame. Call only on UI thread.
+     */
+    @SuppressWarnings("unchecked")
+    public void applyPendingChanges() {
+        //changes offered after this point schedule another batch
+        mScheduled.set(false);
+
+        final Target target = mTarget;
+        int anchor = target != null ? target.getSelectedItem() : -1;
+
+        //items before firstChanged kept their positions, items after lastChanged moved by difference of sizes
+        final int oldSize = mItems.size();
+        int firstChanged = Integer.MAX_VALUE;
+        int lastChanged = -1;
+        Change c;
+        while ((c = mPending.poll()) != null) {
+            final int size = mItems.size();
+            switch (c.type) {
+                case TYPE_INSERT: {
+                    final int position = c.position == END || c.position > size ? size : c.position;
+                    mItems.add(position, (T) c.item);
+                    if (position <= anchor) anchor++;
+                    firstChanged = Math.min(firstChanged, position);
+                    lastChanged = Math.max(lastChanged >= position ? lastChanged + 1 : lastChanged, position);
+                    break;
+                }
+                case TYPE_REMOVE:
+                    if (c.position >= size) break;
+                    mItems.remove(c.position);
+                    //when selected item is removed, item after it takes its place
+                    if (c.position < anchor) anchor--;
+                    firstChanged = Math.min(firstChanged, c.position);
+                    lastChanged = Math.max(lastChanged >= c.position ? lastChanged - 1 : lastChanged, c.position - 1);
+                    break;
+                case TYPE_UPDATE:
+                    if (c.position >= size) break;
+                    mItems.set(c.position, (T) c.item);
+                    firstChanged = Math.min(firstChanged, c.position);
+                    lastChanged = Math.max(lastChanged, c.position);
+                    break;
+            }
+        }
+
+        if (firstChanged == Integer.MAX_VALUE || target == null) return;
+        target.onItemsChanged(firstChanged, lastChanged, mItems.size() - oldSize, anchor);
+    }
+
+    /**
+     * Widget updated by queue
+     */
+    interface Target {
+        /**
+         * @return position of selected item in list, or -1 if there is none
+         */
+        int getSelectedItem();
+
+        /**
+         * Runs task on UI thread with next frame
+         */
+        void postOnNextFrame(Runnable task);
+
+        /**
+         * @param firstChanged first position which changed
+         * @param lastChanged last changed position after changes, items after it moved by sizeDelta
+         * @param sizeDelta difference of list sizes
+         * @param anchor position of selected item after changes, or -1 if there was none
+         */
+        void onItemsChanged(int firstChanged, int lastChanged, int sizeDelta, int anchor);
+    }
+
+    private static final class CarouselTarget implements Target {
+        private final Carousel mCarousel;
+
+        CarouselTarget(Carousel carousel) {
+            mCarousel = carousel;
+        }
+
+        @Override
+        public int getSelectedItem() {
+            if (mCarousel.getAdapter() == null || mCarousel.getItemCount() == 0) return -1;
+            return mCarousel.getAdapterPosition(mCarousel.getSelection(), 0);
+        }
+
+        @Override
+        public void postOnNextFrame(Runnable task) {
+            if (Build.VERSION.SDK_INT >= 16) {
+                mCarousel.postOnAnimation(task);
+            } else {
+                mCarousel.post(task);
+            }
+        }
+
+        @Override
+        public void onItemsChanged(int firstChanged, int lastChanged, int sizeDelta, int anchor) {
+            mCarousel.onItemsChanged(firstChanged, lastChanged, sizeDelta, anchor);
+        }
+    }
+
+    private static final class MainThreadExecutor implements Executor {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable task) {
+            mHandler.post(task);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.appl.library;
+
+/**
+ * Layout logic of carousel without dependency on android framework. Engine tracks range of laid out item positions,
+ * their horizontal coordinates, edges of content and item in center. Items have equal width and are placed
+ * with constant stride, so coordinates of any item are computed, not read from views. Coordinates of laid out items
+ * are cached in ring buffer, which is shifted in O(1) when items are added or removed on either side.
+ * <p>
+ * {@link Carousel} drives engine step by step and adds, removes and lays out views as engine decides.
+ * Engine can be also used alone through {@link #fill(int)}, for unit tests, benchmarks or other renderers.
+ *
+ * @author Martin Appl
+ */
+public class CarouselLayoutEngine {
+    /**
+     * Value of edge which was not reached yet
+     */
+    public static final int NO_VALUE = Integer.MIN_VALUE + 1777;
+
+    //geometry
+    private int mItemCount;
+    private int mItemWidth;
+    private float mSpacing = 1f;
+    private int mCoveredBySibling;
+    private int mViewportWidth;
+
+    //laid out range, mLast < mFirst when nothing is laid out
+    private int mFirst = 0;
+    private int mLast = -1;
+    private int mFirstLeft;
+    /**
+     * Index of item in center within laid out range, -1 if nothing is laid out
+     */
+    private int mCenterIndex = -1;
+
+    private int mLeftEdge = NO_VALUE;
+    private int mRightEdge = NO_VALUE;
+
+    /**
+     * Ring buffer of laid out items, slot of item with index i in laid out range is (mHead + i) & (capacity - 1).
+     * Capacity is power of two.
+     */
+    private int[] mLefts = new int[8];
+    private int[] mRights = new int[8];
+    private int[] mCenters = new int[8];
+    private int mHead;
+
+    /**
+     * @param itemCount        number of items
+     * @param itemWidth        width of item in pixels
+     * @param spacing          distance of neighbouring items relative to item width
+     * @param coveredBySibling part of item width covered by its neighbour, items are added while their uncovered
+     *                         part reaches into viewport
+     * @param viewportWidth    width of visible area
+     */
+    public void setGeometry(int itemCount, int itemWidth, float spacing, int coveredBySibling, int viewportWidth) {
+        mItemCount = itemCount;
+        mItemWidth = itemWidth;
+        mSpacing = spacing;
+        mCoveredBySibling = coveredBySibling;
+        mViewportWidth = viewportWidth;
+    }
+
+    public int getItemCount() {
+        return mItemCount;
+    }
+
+    /**
+     * @return distance between left coordinates of neighbouring items
+     */
+    public int getStride() {
+        return (int) (mItemWidth * mSpacing);
+    }
+
+    /**
+     * Forgets laid out items and reached edges
+     */
+    public void clear() {
+        mFirst = 0;
+        mLast = -1;
+        mHead = 0;
+        mCenterIndex = -1;
+        mLeftEdge = NO_VALUE;
+        mRightEdge = NO_VALUE;
+    }
+
+    /**
+     * Starts new layout with single item, which is in center
+     *
+     * @param position position of item
+     * @param left     left coordinate of item
+     */
+    public void layoutFirst(int position, int left) {
+        clear();
+        mFirst = position;
+        mLast = position;
+        mFirstLeft = left;
+        mCenterIndex = 0;
+        storeItem(0, left);
+        updateEdges();
+    }
+
+    /**
+     * @return true if item after last laid out one reaches into viewport starting at given coordinate
+     */
+    public boolean canAddAfter(int leftScreenEdge) {
+        if (isEmpty() || mLast >= mItemCount - 1) return false;
+        final int newLeft = getLeftAt(getLaidOutCount() - 1) + getStride();
+        return newLeft + mCoveredBySibling < leftScreenEdge + mViewportWidth;
+    }
+
+    /**
+     * Adds item after last laid out one
+     *
+     * @return left coordinate of added item
+     */
+    public int addAfter() {
+        ensureCapacity();
+        mLast++;
+        final int left = getItemLeft(mLast);
+        storeItem(getLaidOutCount() - 1, left);
+        updateEdges();
+        return left;
+    }
+
+    /**
+     * @return true if item before first laid out one reaches into viewport starting at given coordinate
+     */
+    public boolean canAddBefore(int leftScreenEdge) {
+        if (isEmpty() || mFirst <= 0) return false;
+        final int newRight = mFirstLeft + mItemWidth - getStride();
+        return newRight - mCoveredBySibling > leftScreenEdge;
+    }
+
+    /**
+     * Adds item before first laid out one
+     *
+     * @return left coordinate of added item
+     */
+    public int addBefore() {
+        ensureCapacity();
+        mFirst--;
+        mFirstLeft -= getStride();
+        mCenterIndex++;
+        mHead = (mHead - 1) & (mLefts.length - 1);
+        storeItem(0, mFirstLeft);
+        updateEdges();
+        return mFirstLeft;
+    }
+
+    /**
+     * @return true if first laid out item left viewport starting at given coordinate. Item in center and last
+     * remaining item are never removed.
+     */
+    public boolean canRemoveFirst(int leftScreenEdge) {
+        return getLaidOutCount() > 1 && mCenterIndex > 0 && getLeftAt(0) + mItemWidth * mSpacing < leftScreenEdge;
+    }
+
+    public void removeFirst() {
+        mFirst++;
+        mFirstLeft += getStride();
+        mCenterIndex--;
+        mHead = (mHead + 1) & (mLefts.length - 1);
+    }
+
+    /**
+     * @return true if last laid out item left viewport starting at given coordinate. Item in center and last
+     * remaining item are never removed.
+     */
+    public boolean canRemoveLast(int leftScreenEdge) {
+        return getLaidOutCount() > 1 && mCenterIndex < getLaidOutCount() - 1
+            && getRightAt(getLaidOutCount() - 1) - mItemWidth * mSpacing > leftScreenEdge + mViewportWidth;
+    }
+
+    public void removeLast() {
+        mLast--;
+    }
+
+    /**
+     * Changes positions of laid out items after items were inserted or removed in front of them.
+     * Coordinates of laid out items are kept, edges are computed again for new positions and item count.
+     *
+     * @param delta number of positions added to every laid out item, items must stay in range of item count
+     */
+    public void offsetPositions(int delta) {
+        mFirst += delta;
+        mLast += delta;
+        mLeftEdge = NO_VALUE;
+        mRightEdge = NO_VALUE;
+        if (!isEmpty()) updateEdges();
+    }
+
+    /**
+     * Finds laid out item nearest to given coordinate, on tie item on left wins
+     *
+     * @param screenCenter horizontal center of viewport
+     * @return true if item in center changed
+     */
+    public boolean updateCenter(int screenCenter) {
+        if (isEmpty()) return false;
+
+        final int old = mCenterIndex;
+        final int stride = getStride();
+        int index = 0;
+        if (stride > 0) {
+            final int distance = screenCenter - getCenterAt(0);
+            index = Math.max(0, Math.min(getLaidOutCount() - 1, (2 * distance + stride - 1) / (2 * stride)));
+        }
+        mCenterIndex = index;
+        return old != mCenterIndex;
+    }
+
+    /**
+     * Removes items which left viewport, adds items which entered it and updates item in center, without any views
+     *
+     * @param leftScreenEdge left coordinate of viewport
+     */
+    public void fill(int leftScreenEdge) {
+        while (canRemoveFirst(leftScreenEdge)) removeFirst();
+        while (canRemoveLast(leftScreenEdge)) removeLast();
+        while (canAddAfter(leftScreenEdge)) addAfter();
+        while (canAddBefore(leftScreenEdge)) addBefore();
+        updateCenter(leftScreenEdge + mViewportWidth / 2);
+    }
+
+    /**
+     * Drawing order of laid out items, item in center is drawn last and items further from it sooner
+     */
+    public int getDrawingOrder(int count, int i) {
+        if (i < mCenterIndex) {
+            return i;
+        } else {
+            return count - 1 - (i - mCenterIndex);
+        }
+    }
+
+    private void storeItem(int index, int left) {
+        final int slot = (mHead + index) & (mLefts.length - 1);
+        mLefts[slot] = left;
+        mRights[slot] = left + mItemWidth;
+        mCenters[slot] = left + mItemWidth / 2;
+    }
+
+    /**
+     * Makes room for one more item, buffer is unrolled so that first item is in slot 0
+     */
+    private void ensureCapacity() {
+        final int count = getLaidOutCount();
+        if (count < mLefts.length) return;
+
+        final int capacity = mLefts.length * 2;
+        mLefts = unroll(mLefts, capacity, count);
+        mRights = unroll(mRights, capacity, count);
+        mCenters = unroll(mCenters, capacity, count);
+        mHead = 0;
+    }
+
+    private int[] unroll(int[] ring, int capacity, int count) {
+        final int[] result = new int[capacity];
+        for (int i = 0; i < count; i++) {
+            result[i] = ring[(mHead + i) & (ring.length - 1)];
+        }
+        return result;
+    }
+
+    /**
+     * @param index index of item within laid out range
+     * @return cached left coordinate of laid out item
+     */
+    public int getLeftAt(int index) {
+        return mLefts[(mHead + index) & (mLefts.length - 1)];
+    }
+
+    public int getRightAt(int index) {
+        return mRights[(mHead + index) & (mRights.length - 1)];
+    }
+
+    public int getCenterAt(int index) {
+        return mCenters[(mHead + index) & (mCenters.length - 1)];
+    }
+
+    private void updateEdges() {
+        if (mFirst == 0) mLeftEdge = mFirstLeft;
+        if (mLast == mItemCount - 1) mRightEdge = getRightAt(getLaidOutCount() - 1);
+    }
+
+    public boolean isEmpty() {
+        return mLast < mFirst;
+    }
+
+    public int getFirstPosition() {
+        return mFirst;
+    }
+
+    public int getLastPosition() {
+        return mLast;
+    }
+
+    public int getLaidOutCount() {
+        return mLast - mFirst + 1;
+    }
+
+    /**
+     * @return index of item in center within laid out range, -1 if nothing is laid out
+     */
+    public int getCenterIndex() {
+        return mCenterIndex;
+    }
+
+    /**
+     * @return position of item in center, -1 if nothing is laid out
+     */
+    public int getCenterPosition() {
+        return mCenterIndex == -1 ? -1 : mFirst + mCenterIndex;
+    }
+
+    /**
+     * @return left coordinate of item on any position, computed from laid out items
+     */
+    public int getItemLeft(int position) {
+        return mFirstLeft + (position - mFirst) * getStride();
+    }
+
+    public int getItemCenter(int position) {
+        return getItemLeft(position) + mItemWidth / 2;
+    }
+
+    /**
+     * @return left coordinate of first item, or {@link #NO_VALUE} if it was not laid out yet
+     */
+    public int getLeftEdge() {
+        return mLeftEdge;
+    }
+
+    /**
+     * @return right coordinate of last item, or {@link #NO_VALUE} if it was not laid out yet
+     */
+    public int getRightEdge() {
+        return mRightEdge;
+    }
+}
@@ -0,0 +1,243 @@
+package com.appl.library;
+
+import android.view.animation.AnimationUtils;
+
+/**
+ * Scroller with analytic fling model. Velocity of fling decays exponentially by friction, so end position and duration
+ * of fling are known right when it starts. Fling stops exactly at given bounds and velocity with which bound was hit
+ * is kept for edge effects.
+ *
+ * @author Martin Appl
+ */
+class CarouselScroller {
+    private static final int MODE_FLING = 0;
+    private static final int MODE_SCROLL = 1;
+
+    /**
+     * Default decay rate of fling velocity per second
+     */
+    static final float DEFAULT_FRICTION = 4.0f;
+
+    private float mFriction = DEFAULT_FRICTION;
+
+    /**
+     * Velocity in pixels per second under which fling is considered finished
+     */
+    private float mStopVelocity = 50f;
+
+    private int mMode;
+    private int mStartX;
+    private int mFinalX;
+    private int mCurrX;
+    private float mVelocity;
+    private float mCurrVelocity;
+    private long mStartTime;
+    private int mDuration;
+    private boolean mFinished = true;
+
+    /**
+     * Time used instead of animation clock, -1 when animation clock is used
+     */
+    private long mClockOverride = -1;
+
+    /**
+     * True when fling ends on bound, not because of friction
+     */
+    private boolean mHitEdge;
+    private float mEdgeVelocity;
+
+    /**
+     * @param friction decay rate of velocity per second, higher values stop fling sooner
+     */
+    void setFriction(float friction) {
+        if (friction <= 0) throw new IllegalArgumentException("Friction must be greater than 0");
+        mFriction = friction;
+    }
+
+    float getFriction() {
+        return mFriction;
+    }
+
+    /**
+     * Drives scroller by given time instead of animation clock, used to replay recorded sessions deterministically
+     *
+     * @param time time in milliseconds of {@link android.os.SystemClock#uptimeMillis()} base, -1 to use animation clock
+     */
+    void setClockOverride(long time) {
+        mClockOverride = time;
+    }
+
+    private long now() {
+        return mClockOverride >= 0 ? mClockOverride : AnimationUtils.currentAnimationTimeMillis();
+    }
+
+    void setStopVelocity(float velocity) {
+        mStopVelocity = Math.max(1f, velocity);
+    }
+
+    /**
+     * Start fling and compute its end position and duration
+     *
+     * @param velocity initial velocity in pixels per second
+     * @param minX     minimal position where fling may end
+     * @param maxX     maximal position where fling may end
+     */
+    void fling(int startX, int velocity, int minX, int maxX) {
+        mMode = MODE_FLING;
+        mStartX = startX;
+        mCurrX = startX;
+        mVelocity = velocity;
+        mCurrVelocity = velocity;
+        mStartTime = now();
+        mFinished = false;
+        mHitEdge = false;
+        mEdgeVelocity = 0;
+
+        final float speed = Math.abs(velocity);
+        float duration;
+        float end;
+        if (speed <= mStopVelocity) {
+            duration = 0;
+            end = startX;
+        } else {
+            // x(t) = x0 + v0/k * (1 - e^(-kt)), fling ends when velocity decays to stop velocity
+            duration = (float) Math.log(speed / mStopVelocity) / mFriction;
+            end = startX + Math.signum(velocity) * (speed - mStopVelocity) / mFriction;
+        }
+
+        if (end < minX || end > maxX) {
+            final int bound = end < minX ? minX : maxX;
+            final float distance = bound - startX;
+            if (distance * velocity <= 0) {
+                //already out of bounds, do not move further
+                duration = 0;
+            } else {
+                duration = (float) -Math.log(1 - distance * mFriction / velocity) / mFriction;
+                mHitEdge = true;
+                mEdgeVelocity = velocity * (float) Math.exp(-mFriction * duration);
+            }
+            end = bound;
+        }
+
+        mFinalX = Math.round(end);
+        mDuration = (int) (duration * 1000);
+    }
+
+    /**
+     * Start scroll by given distance, it decelerates to end
+     */
+    void startScroll(int startX, int dx, int duration) {
+        mMode = MODE_SCROLL;
+        mStartX = startX;
+        mCurrX = startX;
+        mFinalX = startX + dx;
+        mDuration = duration;
+        mStartTime = now();
+        mFinished = false;
+        mHitEdge = false;
+        mEdgeVelocity = 0;
+        mVelocity = duration > 0 ? 3f * dx * 1000 / duration : 0;
+        mCurrVelocity = mVelocity;
+    }
+
+    /**
+     * Call when you want to know the new location.
+     *
+     * @return true if animation was running in this step, false if it was already finished
+     */
+    boolean computeScrollOffset() {
+        if (mFinished) return false;
+
+        final int elapsed = timePassed();
+        if (elapsed >= mDuration) {
+            mCurrX = mFinalX;
+            mCurrVelocity = mHitEdge ? mEdgeVelocity : 0;
+            mFinished = true;
+            return true;
+        }
+
+        mCurrX = getPositionAt(elapsed);
+        if (mMode == MODE_FLING) {
+            mCurrVelocity = mVelocity * (float) Math.exp(-mFriction * elapsed / 1000f);
+        } else {
+            final float remaining = 1f - (float) elapsed / mDuration;
+            mCurrVelocity = mVelocity * remaining * remaining;
+        }
+        return true;
+    }
+
+    /**
+     * Position of current animation at any time, whole trajectory is known when animation starts
+     *
+     * @param elapsed time in milliseconds from start of animation
+     * @return position at given time, state of scroller is not changed
+     */
+    int getPositionAt(int elapsed) {
+        if (elapsed >= mDuration) return mFinalX;
+        if (elapsed <= 0) return mStartX;
+
+        if (mMode == MODE_FLING) {
+            final float decay = (float) Math.exp(-mFriction * elapsed / 1000f);
+            final int x = mStartX + Math.round(mVelocity / mFriction * (1 - decay));
+            return mFinalX >= mStartX ? Math.min(x, mFinalX) : Math.max(x, mFinalX);
+        } else {
+            // cubic ease out
+            final float remaining = 1f - (float) elapsed / mDuration;
+            final float f = 1f - remaining * remaining * remaining;
+            return mStartX + Math.round(f * (mFinalX - mStartX));
+        }
+    }
+
+    /**
+     * @return time in milliseconds from start of current animation
+     */
+    int timePassed() {
+        return (int) (now() - mStartTime);
+    }
+
+    boolean isFinished() {
+        return mFinished;
+    }
+
+    void forceFinished(boolean finished) {
+        mFinished = finished;
+    }
+
+    /**
+     * Stops animation on its final position
+     */
+    void abortAnimation() {
+        mCurrX = mFinalX;
+        mCurrVelocity = 0;
+        mFinished = true;
+    }
+
+    int getCurrX() {
+        return mCurrX;
+    }
+
+    int getFinalX() {
+        return mFinalX;
+    }
+
+    /**
+     * @return duration of current animation in milliseconds
+     */
+    int getDuration() {
+        return mDuration;
+    }
+
+    /**
+     * @return current velocity in pixels per second, after fling ended on bound it is velocity of hitting the bound
+     */
+    float getCurrVelocity() {
+        return mCurrVelocity;
+    }
+
+    /**
+     * @return true if fling was stopped by bound
+     */
+    boolean hasHitEdge() {
+        return mHitEdge;
+    }
+}
@@ -0,0 +1,329 @@
+package com.appl.library;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+
+/**
+ * Records interactions of carousel into ring buffer of fixed size binary records - touch events, frames with
+ * scroll offset, refills and binds of items with their durations. Oldest records are overwritten when buffer is full.
+ * Recording can be dumped to file and replayed headlessly, so session in which jank occurred becomes repeatable benchmark.
+ * Tracer is not thread safe, it has to be used from thread of carousel.
+ *
+ * @author Martin Appl
+ */
+public final class CarouselTracer {
+    /**
+     * Touch event, a = action, b = x, c = y as float bits. Only coordinates of first pointer of event are recorded,
+     * so only single pointer gestures are replayed faithfully.
+     */
+    public static final int TYPE_TOUCH = 1;
+    /**
+     * Frame computed by carousel, a = duration in microseconds, b = touch state, c = child count
+     */
+    public static final int TYPE_FRAME = 2;
+    /**
+     * Refill of children, a = duration in microseconds, b = first visible position, c = last visible position
+     */
+    public static final int TYPE_REFILL = 3;
+    /**
+     * Item bound by adapter, a = duration in microseconds, b = position, c = 1 if view was recycled
+     */
+    public static final int TYPE_BIND = 4;
+
+    private static final int MAGIC = 0x43525452;
+    private static final int VERSION = 1;
+    /**
+     * Number of int fields of record, time is kept separately
+     */
+    private static final int RECORD_INTS = 5;
+
+    private final long[] mTimes;
+    private final int[] mData;
+    /**
+     * Index where next record is written
+     */
+    private int mHead;
+    private int mSize;
+
+    private int mWidth;
+    private int mHeight;
+    private int mItemCount;
+
+    /**
+     * @param capacity maximal number of records kept, one frame of fling takes one frame record and few refill and bind records
+     */
+    public CarouselTracer(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1");
+        mTimes = new long[capacity];
+        mData = new int[capacity * RECORD_INTS];
+    }
+
+    /**
+     * @return number of records in buffer
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        mHead = 0;
+        mSize = 0;
+    }
+
+    void setGeometry(int width, int height, int itemCount) {
+        mWidth = width;
+        mHeight = height;
+        mItemCount = itemCount;
+    }
+
+    void recordTouch(MotionEvent ev, int scrollX) {
+        //time of event, not of its dispatch, so replayed velocities match recorded ones. Uptime clock and
+        //System.nanoTime() are both monotonic clock, so records share time base.
+        record(TYPE_TOUCH, ev.getEventTime() * 1000000L, scrollX, ev.getAction(),
+            Float.floatToIntBits(ev.getX()), Float.floatToIntBits(ev.getY()));
+    }
+
+    void recordFrame(int scrollX, long startNanos, int touchState, int childCount) {
+        final long now = System.nanoTime();
+        record(TYPE_FRAME, now, scrollX, (int) ((now - startNanos) / 1000), touchState, childCount);
+    }
+
+    void recordRefill(int scrollX, long startNanos, int firstVisible, int lastVisible) {
+        final long now = System.nanoTime();
+        record(TYPE_REFILL, now, scrollX, (int) ((now - startNanos) / 1000), firstVisible, lastVisible);
+    }
+
+    void recordBind(int scrollX, long startNanos, int position, boolean recycled) {
+        final long now = System.nanoTime();
+        record(TYPE_BIND, now, scrollX, (int) ((now - startNanos) / 1000), position, recycled ? 1 : 0);
+    }
+
+    private void record(int type, long time, int scrollX, int a, int b, int c) {
+        mTimes[mHead] = time;
+        final int offset = mHead * RECORD_INTS;
+        mData[offset] = type;
+        mData[offset + 1] = scrollX;
+        mData[offset + 2] = a;
+        mData[offset + 3] = b;
+        mData[offset + 4] = c;
+
+        mHead = (mHead + 1) % mTimes.length;
+        if (mSize < mTimes.length) mSize++;
+    }
+
+    /**
+     * Writes records from oldest to newest, together with size of widget and item count
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(mWidth);
+        data.writeInt(mHeight);
+        data.writeInt(mItemCount);
+        data.writeInt(mSize);
+
+        final int capacity = mTimes.length;
+        int index = (mHead - mSize + capacity) % capacity;
+        for (int i = 0; i < mSize; i++) {
+            data.writeLong(mTimes[index]);
+            for (int f = 0; f < RECORD_INTS; f++) {
+                data.writeInt(mData[index * RECORD_INTS + f]);
+            }
+            index = (index + 1) % capacity;
+        }
+        data.flush();
+    }
+
+    public void dumpToFile(File file) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads recording written by {@link #writeTo(OutputStream)}
+     */
+    public static Recording read(InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) throw new IOException("Not a carousel trace");
+        final int version = data.readInt();
+        if (version != VERSION) throw new IOException("Unsupported trace version " + version);
+
+        final int width = data.readInt();
+        final int height = data.readInt();
+        final int itemCount = data.readInt();
+        final int size = data.readInt();
+
+        final long[] times = new long[size];
+        final int[] records = new int[size * RECORD_INTS];
+        for (int i = 0; i < size; i++) {
+            times[i] = data.readLong();
+            for (int f = 0; f < RECORD_INTS; f++) {
+                records[i * RECORD_INTS + f] = data.readInt();
+            }
+        }
+        return new Recording(width, height, itemCount, times, records);
+    }
+
+    /**
+     * Recorded session which can be replayed on carousel
+     */
+    public static final class Recording {
+        private final int mWidth;
+        private final int mHeight;
+        private final int mItemCount;
+        private final long[] mTimes;
+        private final int[] mRecords;
+
+        private Recording(int width, int height, int itemCount, long[] times, int[] records) {
+            mWidth = width;
+            mHeight = height;
+            mItemCount = itemCount;
+            mTimes = times;
+            mRecords = records;
+        }
+
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public int getHeight() {
+            return mHeight;
+        }
+
+        /**
+         * @return number of positions of recorded carousel, adapter used for replay should have the same count
+         */
+        public int getItemCount() {
+            return mItemCount;
+        }
+
+        public int size() {
+            return mTimes.length;
+        }
+
+        public long getTime(int index) {
+            return mTimes[index];
+        }
+
+        public int getType(int index) {
+            return mRecords[index * RECORD_INTS];
+        }
+
+        public int getScrollX(int index) {
+            return mRecords[index * RECORD_INTS + 1];
+        }
+
+        /**
+         * @param field 0 to 2, meaning depends on record type
+         */
+        public int getValue(int index, int field) {
+            return mRecords[index * RECORD_INTS + 2 + field];
+        }
+
+        /**
+         * Replays recorded touch events with their original timing on carousel which is not attached to window and
+         * computes and draws frame for every recorded frame. Animations use recorded time, so replay gives the same
+         * scroll offsets on every run. Only first pointer is replayed, events of other pointers are skipped.
+         * Replay does not post anything to {@link android.os.Looper} of calling thread, so it can run on any thread.
+         *
+         * @param carousel carousel with adapter, for example {@link ReplayAdapter} with item count of recording
+         * @param canvas   canvas on which frames are drawn
+         * @return duration of every replayed frame in nanoseconds
+         */
+        public long[] replay(Carousel carousel, Canvas canvas) {
+            if (carousel.getAdapter() == null)
+                throw new IllegalStateException("You are trying to replay trace on widget without adapter");
+
+            final long[] frames = new long[size()];
+            int frameCount = 0;
+            if (size() == 0) return frames;
+
+            final CarouselTracer tracer = carousel.getTracer();
+            carousel.setTracer(null);
+            carousel.prepareReplay(mWidth, mHeight, getScrollX(0));
+
+            final long baseTime = SystemClock.uptimeMillis();
+            long downTime = baseTime;
+            for (int i = 0; i < size(); i++) {
+                final long time = baseTime + (mTimes[i] - mTimes[0]) / 1000000;
+                final int type = getType(i);
+
+                if (type == TYPE_TOUCH) {
+                    final int action = getValue(i, 0) & MotionEvent.ACTION_MASK;
+                    if (action == MotionEvent.ACTION_POINTER_DOWN || action == MotionEvent.ACTION_POINTER_UP) continue;
+                    if (action == MotionEvent.ACTION_DOWN) downTime = time;
+
+                    final MotionEvent ev = MotionEvent.obtain(downTime, time, action,
+                        Float.intBitsToFloat(getValue(i, 1)), Float.intBitsToFloat(getValue(i, 2)), 0);
+                    carousel.replayTouch(ev);
+                    ev.recycle();
+                } else if (type == TYPE_FRAME) {
+                    final long start = System.nanoTime();
+                    carousel.replayFrame(time, canvas);
+                    frames[frameCount++] = System.nanoTime() - start;
+                }
+            }
+
+            carousel.finishReplay();
+            carousel.setTracer(tracer);
+            return Arrays.copyOf(frames, frameCount);
+        }
+    }
+
+    /**
+     * Adapter with plain colored views, which stands in for real adapter during replay
+     */
+    public static class ReplayAdapter extends BaseAdapter {
+        private final Context mContext;
+        private final int mCount;
+
+        public ReplayAdapter(Context context, int count) {
+            mContext = context;
+            mCount = count;
+        }
+
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return position;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            final View v = convertView != null ? convertView : new View(mContext);
+            v.setBackgroundColor(position % 2 == 0 ? Color.DKGRAY : Color.LTGRAY);
+            return v;
+        }
+    }
+}
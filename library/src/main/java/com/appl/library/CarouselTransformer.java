@@ -0,0 +1,40 @@
+package com.appl.library;
+
+/**
+ * Maps position of item relative to center of carousel on its visual transformation.
+ * Carousel calls transformer for every child in one pass per frame and reuses single {@link Transform} instance,
+ * implementations therefore must not allocate.
+ *
+ * @author Martin Appl
+ */
+public interface CarouselTransformer {
+
+    /**
+     * @param carousel         carousel which children are transformed
+     * @param relativePosition position of child center in range -1 to 1, where 0 is center of widget.
+     *                         Children out of screen can have values over 1 or -1
+     * @param out              transformation to fill, it is reset to identity before each call
+     */
+    void transform(Carousel carousel, float relativePosition, Transform out);
+
+    /**
+     * Mutable value object holding transformation of one child
+     */
+    class Transform {
+        public float rotationY;
+        public float translationX;
+        public float scale;
+        public float alpha;
+
+        public Transform() {
+            reset();
+        }
+
+        public void reset() {
+            rotationY = 0;
+            translationX = 0;
+            scale = 1;
+            alpha = 1;
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package com.appl.library;
 
 import android.content.Context;
+import android.content.res.TypedArray;
 import android.graphics.*;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.view.ViewTreeObserver;
 import android.widget.FrameLayout;
@@ -15,241 +17,381 @@ import android.widget.FrameLayout;
 public class CoverFlowCarousel extends Carousel {
 
     /**
-     * Widget size on which was tuning of parameters done. This value is used to scale parameters on when widgets has different size
+     * Size of reflection as a fraction of original image (0-1)
      */
-    private int mTuningWidgetSize = 1280;
+    private float mReflectionHeight = 0.5f;
 
     /**
-     * Distance from center as fraction of half of widget size where covers start to rotate into center
-     * 1 means rotation starts on edge of widget, 0 means only center rotated
+     * Starting opacity of reflection. Reflection fades from this value to transparency;
      */
-    private float mRotationThreshold = 0.3f;
+    private int mReflectionOpacity = 0x70;
 
-    /**
-     * Distance from center as fraction of half of widget size where covers start to zoom in
-     * 1 means scaling starts on edge of widget, 0 means only center scaled
-     */
-    private float mScalingThreshold = 0.3f;
+    //reflection
+    private final Matrix mReflectionMatrix = new Matrix();
+    private final Paint mPaint = new Paint();
+    //private final Paint mReflectionPaint = new Paint();
+    private final PorterDuffXfermode mXfermode = new PorterDuffXfermode(PorterDuff.Mode.DST_IN);
+    private final Canvas mReflectionCanvas = new Canvas();
 
-    /**
-     * Distance from center as fraction of half of widget size,
-     * where covers start enlarge their spacing to allow for smooth passing each other without jumping over each other
-     * 1 means edge of widget, 0 means only center
-     */
-    private float mAdjustPositionThreshold = 0.1f;
+    //rendering quality
+    private final DrawFilter mHighQualityFilter = new PaintFlagsDrawFilter(0, Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
+    private final DrawFilter mReducedQualityFilter = new PaintFlagsDrawFilter(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG, 0);
 
     /**
-     * By enlarging this value, you can enlarge spacing in center of widget done by position adjustment
+     * When true, covers are drawn without bitmap filtering and antialiasing during fast fling
      */
-    private float mAdjustPositionMultiplier = 0.8f;
+    private boolean mAdaptiveQualityEnabled = true;
 
     /**
-     * Absolute value of rotation angle of cover at edge of widget in degrees
+     * Fling velocity in pixels per second above which covers are drawn in reduced quality
      */
-    private float mMaxRotationAngle = 70.0f;
+    private int mReducedQualityVelocity;
 
     /**
-     * Scale factor of item in center
+     * True while current frame is drawn in reduced quality
      */
-    private float mMaxScaleFactor = 1.2f;
+    private boolean mReducedQuality = false;
 
     /**
-     * Radius of circle path which covers follow. Range of screen is -1 to 1, minimal radius is therefore 1
+     * When true, parts of covers hidden behind nearer opaque covers are not drawn
      */
-    private float mRadius = 2f;
+    private boolean mOverdrawCullingEnabled = true;
 
     /**
-     * Size multiplier used to simulate perspective
+     * Projected width in pixels under which cover rotated to edge is not drawn at all
      */
-    private float mPerspectiveMultiplier = 1f;
+    private static final float EDGE_ON_WIDTH = 1.0f;
 
-    /**
-     * Size of reflection as a fraction of original image (0-1)
-     */
-    private float mReflectionHeight = 0.5f;
+    private final float[] mCornerPoints = new float[16];
+
+    //private boolean mInvalidated = false;
 
     /**
-     * Starting opacity of reflection. Reflection fades from this value to transparency;
+     * Tuning of cover flow effect
      */
-    private int mReflectionOpacity = 0x70;
-
-    //reflection
-    private final Matrix mReflectionMatrix = new Matrix();
-    private final Paint mPaint = new Paint();
-    //private final Paint mReflectionPaint = new Paint();
-    private final PorterDuffXfermode mXfermode = new PorterDuffXfermode(PorterDuff.Mode.DST_IN);
-    private final Canvas mReflectionCanvas = new Canvas();
-
-    //private boolean mInvalidated = false;
+    private final CoverFlowTransformer mCoverFlowTransformer = new CoverFlowTransformer();
 
     public CoverFlowCarousel(Context context) {
         super(context);
+        init(null, 0);
     }
 
     public CoverFlowCarousel(Context context, AttributeSet attrs) {
         super(context, attrs);
+        init(attrs, 0);
     }
 
     public CoverFlowCarousel(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
+        init(attrs, defStyleAttr);
     }
 
-    private void setTransformation(View v){
-        int c = getChildCenter(v);
-        v.setRotationY(getRotationAngle(c) - getAngleOnCircle(c));
-        v.setTranslationX(getChildAdjustPosition(v));
-        float scale = getScaleFactor(c) - getChildCircularPathZOffset(c);
-        v.setScaleX(scale);
-        v.setScaleY(scale);
+    private void init(AttributeSet attrs, int defStyleAttr){
+        if(attrs != null) {
+            final TypedArray a = getContext().obtainStyledAttributes(attrs, R.styleable.CoverFlowCarousel, defStyleAttr, 0);
+            final CoverFlowTransformer.Config defaults = mCoverFlowTransformer.getConfig();
+            try {
+                mCoverFlowTransformer.setConfig(defaults.buildUpon()
+                    .setTuningWidgetSize(a.getInt(R.styleable.CoverFlowCarousel_coverFlowTuningWidgetSize, defaults.tuningWidgetSize))
+                    .setRotationThreshold(a.getFloat(R.styleable.CoverFlowCarousel_coverFlowRotationThreshold, defaults.rotationThreshold))
+                    .setScalingThreshold(a.getFloat(R.styleable.CoverFlowCarousel_coverFlowScalingThreshold, defaults.scalingThreshold))
+                    .setAdjustPositionThreshold(a.getFloat(R.styleable.CoverFlowCarousel_coverFlowAdjustPositionThreshold, defaults.adjustPositionThreshold))
+                    .setAdjustPositionMultiplier(a.getFloat(R.styleable.CoverFlowCarousel_coverFlowAdjustPositionMultiplier, defaults.adjustPositionMultiplier))
+                    .setMaxRotationAngle(a.getFloat(R.styleable.CoverFlowCarousel_coverFlowMaxRotationAngle, defaults.maxRotationAngle))
+                    .setMaxScaleFactor(a.getFloat(R.styleable.CoverFlowCarousel_coverFlowMaxScaleFactor, defaults.maxScaleFactor))
+                    .setRadius(a.getFloat(R.styleable.CoverFlowCarousel_coverFlowRadius, defaults.radius))
+                    .setPerspectiveMultiplier(a.getFloat(R.styleable.CoverFlowCarousel_coverFlowPerspectiveMultiplier, defaults.perspectiveMultiplier))
+                    .build());
+            } finally {
+                a.recycle();
+            }
+        }
+
+        setTransformer(mCoverFlowTransformer);
+        mReducedQualityVelocity = ViewConfiguration.get(getContext()).getScaledMaximumFlingVelocity() / 4;
     }
 
     @Override
     protected void dispatchDraw(Canvas canvas) {
-        int bitmask = Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG;
-        canvas.setDrawFilter(new PaintFlagsDrawFilter(bitmask, bitmask));
+        mReducedQuality = mAdaptiveQualityEnabled && getFlingVelocity() > mReducedQualityVelocity;
+
+        if(mOverdrawCullingEnabled){
+            //transformations of covers animated by render thread are not known on UI thread
+            if(isFlingOnRenderThread()) clearOcclusion();
+            else computeOcclusion();
+        }
+
+        final DrawFilter previous = canvas.getDrawFilter();
+        canvas.setDrawFilter(mReducedQuality ? mReducedQualityFilter : mHighQualityFilter);
         super.dispatchDraw(canvas);
+        canvas.setDrawFilter(previous);
     }
 
 
     @Override
     public void computeScroll() {
         super.computeScroll();
-        for(int i=0; i < getChildCount(); i++){
-            setTransformation(getChildAt(i));
+
+        //fling slowed down or ended, redraw in full quality
+        if(mReducedQuality && getFlingVelocity() <= mReducedQualityVelocity){
+            invalidate();
         }
     }
 
     @Override
-    protected int getPartOfViewCoveredBySibling() {
-        return 0;
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        if(!mOverdrawCullingEnabled) return super.drawChild(canvas, child, drawingTime);
+
+        final CoverFrame frame = (CoverFrame) child;
+        if(frame.mOccluded) return false;
+        if(!frame.mClipped) return super.drawChild(canvas, child, drawingTime);
+
+        final int saveCount = canvas.save();
+        canvas.clipRect(frame.mClipLeft, getScrollY(), frame.mClipRight, getScrollY() + getHeight());
+        final boolean more = super.drawChild(canvas, child, drawingTime);
+        canvas.restoreToCount(saveCount);
+        return more;
     }
 
-    @Override
-    protected View getViewFromAdapter(int position){
-        CoverFrame frame = (CoverFrame) mCache.getCachedView();
-        View recycled = null;
-        if(frame != null) {
-            recycled = frame.getChildAt(0);
+    private void clearOcclusion(){
+        for(int i=0; i < getChildCount(); i++){
+            final CoverFrame frame = (CoverFrame) getChildAt(i);
+            frame.mOccluded = false;
+            frame.mClipped = false;
         }
+    }
 
-        View v = mAdapter.getView(position, recycled , this);
-        if(frame == null) {
-            frame = new CoverFrame(getContext(), v);
-        } else {
-            frame.setCover(v);
+    /**
+     * Finds for every cover which part of it is hidden behind its nearer neighbour (the one drawn after it)
+     * and stores horizontal clip, or marks cover as fully occluded.
+     */
+    private void computeOcclusion(){
+        final int count = getChildCount();
+        for(int i=0; i < count; i++){
+            final CoverFrame frame = (CoverFrame) getChildAt(i);
+            frame.mOccluded = false;
+            frame.mClipped = false;
+            projectCover(frame);
         }
 
-        //to enable drawing cache
-        if(android.os.Build.VERSION.SDK_INT >= 11) frame.setLayerType(LAYER_TYPE_SOFTWARE, null);
-        frame.setDrawingCacheEnabled(true);
+        final int center = getCenterChildIndex();
+        if(center < 0 || center >= count) return;
 
-        return frame;
+        for(int i=0; i < count; i++){
+            final CoverFrame frame = (CoverFrame) getChildAt(i);
+            if(frame.mBoundsRight - frame.mBoundsLeft < EDGE_ON_WIDTH){
+                frame.mOccluded = true;
+                continue;
+            }
+
+            //center cover is in front of all others, covers on left are hidden by right neighbour and vice versa
+            final int nearer;
+            if(i < center) nearer = i + 1;
+            else if(i > center) nearer = i - 1;
+            else continue;
+
+            //translucent or rounded covers do not hide what is behind them
+            final CoverFrame occluder = (CoverFrame) getChildAt(nearer);
+            if(occluder.getChildCount() == 0 || !occluder.getChildAt(0).isOpaque() || occluder.getAlpha() < 1.0f || occluder.mCoverTop > frame.mBoundsTop || occluder.mCoverBottom < frame.mBoundsBottom
+                || occluder.mCoverLeft >= occluder.mCoverRight){
+                continue;
+            }
+
+            if(occluder.mCoverLeft <= frame.mBoundsLeft && occluder.mCoverRight >= frame.mBoundsRight){
+                frame.mOccluded = true;
+            } else if(occluder.mCoverLeft > frame.mBoundsLeft && occluder.mCoverRight >= frame.mBoundsRight){
+                frame.mClipped = true;
+                frame.mClipLeft = frame.mBoundsLeft;
+                frame.mClipRight = occluder.mCoverLeft;
+            } else if(occluder.mCoverLeft <= frame.mBoundsLeft && occluder.mCoverRight < frame.mBoundsRight){
+                frame.mClipped = true;
+                frame.mClipLeft = occluder.mCoverRight;
+                frame.mClipRight = frame.mBoundsRight;
+            }
+        }
     }
 
-    private float getRotationAngle(int childCenter){
-        return -mMaxRotationAngle * getClampedRelativePosition(getRelativePosition(childCenter), mRotationThreshold * getWidgetSizeMultiplier());
+    /**
+     * Projects corners of cover by its transformation matrix and stores its bounding box
+     * and rectangle which is surely covered by cover content (frame margins excluded).
+     */
+    private void projectCover(CoverFrame frame){
+        final float w = frame.getWidth();
+        final float h = frame.getHeight();
+        final float[] p = mCornerPoints;
+
+        //outer corners - top left, top right, bottom left, bottom right
+        p[0] = 0; p[1] = 0; p[2] = w; p[3] = 0; p[4] = 0; p[5] = h; p[6] = w; p[7] = h;
+        //corners of content inside frame margins
+        p[8] = 1; p[9] = 1; p[10] = w - 1; p[11] = 1; p[12] = 1; p[13] = h - 1; p[14] = w - 1; p[15] = h - 1;
+
+        frame.getMatrix().mapPoints(p);
+
+        final float dx = frame.getLeft();
+        final float dy = frame.getTop();
+        frame.mBoundsLeft = Math.min(p[0], p[4]) + dx;
+        frame.mBoundsRight = Math.max(p[2], p[6]) + dx;
+        frame.mBoundsTop = Math.min(p[1], p[3]) + dy;
+        frame.mBoundsBottom = Math.max(p[5], p[7]) + dy;
+
+        frame.mCoverLeft = Math.max(p[8], p[12]) + dx;
+        frame.mCoverRight = Math.min(p[10], p[14]) + dx;
+        frame.mCoverTop = Math.max(p[9], p[11]) + dy;
+        frame.mCoverBottom = Math.min(p[13], p[15]) + dy;
     }
 
-    private float getAngleOnCircle(int childCenter){
-        float x = getRelativePosition(childCenter)/mRadius;
-        if(x < -1.0f) x = -1.0f;
-        if(x > 1.0f) x = 1.0f;
+    /**
+     * Enables skipping of cover parts hidden behind nearer covers and covers rotated to edge.
+     * Only covers whose views report {@link View#isOpaque()} hide covers behind them.
+     */
+    public void setOverdrawCullingEnabled(boolean enabled) {
+        mOverdrawCullingEnabled = enabled;
+        invalidate();
+    }
 
-        return (float) (Math.acos(x)/Math.PI*180.0f - 90.0f);
+    /**
+     * Enables dropping of bitmap filtering and antialiasing during fast fling.
+     * Full quality is restored when fling slows down under threshold velocity.
+     */
+    public void setAdaptiveQualityEnabled(boolean enabled) {
+        mAdaptiveQualityEnabled = enabled;
     }
 
-    private float getScaleFactor(int childCenter){
-        return 1 + (mMaxScaleFactor-1) * (1 - Math.abs(getClampedRelativePosition(getRelativePosition(childCenter), mScalingThreshold * getWidgetSizeMultiplier())));
+    /**
+     * @param velocity fling velocity in pixels per second, above which covers are drawn in reduced quality
+     */
+    public void setReducedQualityVelocity(int velocity) {
+        if(velocity < 0) throw new IllegalArgumentException("Velocity threshold must not be negative");
+        mReducedQualityVelocity = velocity;
     }
 
     /**
-     * Clamps relative position by threshold, and produces values in range -1 to 1 directly usable for transformation computation
-     * @param position value int range -1 to 1
-     * @param threshold always positive value of threshold distance from center in range 0-1
-     * @return
+     * @return tuning of cover flow effect, can be shared with {@link CoverFlowLayoutManager#setTransformer(CoverFlowTransformer)}
      */
-    private float getClampedRelativePosition(float position, float threshold){
-        if(position < 0){
-            if(position < -threshold) return -1f;
-            else return position/threshold;
-        }
-        else{
-            if(position > threshold) return 1;
-            else return position/threshold;
-        }
+    public CoverFlowTransformer getCoverFlowTransformer() {
+        return mCoverFlowTransformer;
+    }
+
+    public CoverFlowTransformer.Config getCoverFlowConfig() {
+        return mCoverFlowTransformer.getConfig();
     }
 
     /**
-     * Calculates relative position on screen in range -1 to 1, widgets out of screen can have values ove 1 or -1
-     * @param pixexPos Absolute position in pixels including scroll offset
-     * @return relative position
+     * Replaces all parameters of cover flow effect at once, covers are transformed again in next frame
      */
-    private float getRelativePosition(int pixexPos){
-        final int half = getWidth()/2;
-        final int centerPos = getScrollX() + half;
+    public void setCoverFlowConfig(CoverFlowTransformer.Config config) {
+        mCoverFlowTransformer.setConfig(config);
+        invalidate();
+    }
 
-        return (pixexPos - centerPos)/((float) half);
+    public void setTuningWidgetSize(int size) {
+        mCoverFlowTransformer.setTuningWidgetSize(size);
+        invalidate();
     }
 
-    private float getWidgetSizeMultiplier(){
-        return ((float)mTuningWidgetSize)/((float)getWidth());
+    public void setRotationThreshold(float threshold) {
+        mCoverFlowTransformer.setRotationThreshold(threshold);
+        invalidate();
     }
 
-    private float getChildAdjustPosition(View child) {
-        final int c = getChildCenter(child);
-        final float crp = getClampedRelativePosition(getRelativePosition(c), mAdjustPositionThreshold * getWidgetSizeMultiplier());
-        final float d = mChildWidth * mAdjustPositionMultiplier * mSpacing * crp * getSpacingMultiplierOnCirlce(c);
+    public void setScalingThreshold(float threshold) {
+        mCoverFlowTransformer.setScalingThreshold(threshold);
+        invalidate();
+    }
 
-        return d;
+    public void setAdjustPositionThreshold(float threshold) {
+        mCoverFlowTransformer.setAdjustPositionThreshold(threshold);
+        invalidate();
     }
 
-    private float getSpacingMultiplierOnCirlce(int childCenter){
-        float x = getRelativePosition(childCenter)/mRadius;
-        return (float) Math.sin(Math.acos(x));
+    public void setAdjustPositionMultiplier(float multiplier) {
+        mCoverFlowTransformer.setAdjustPositionMultiplier(multiplier);
+        invalidate();
     }
 
-    /**
-     * Compute offset following path on circle
-     * @param childCenter
-     * @return offset from position on unitary circle
-     */
-    private float getOffsetOnCircle(int childCenter){
-        float x = getRelativePosition(childCenter)/mRadius;
-        if(x < -1.0f) x = -1.0f;
-        if(x > 1.0f) x = 1.0f;
+    public void setMaxRotationAngle(float angle) {
+        mCoverFlowTransformer.setMaxRotationAngle(angle);
+        invalidate();
+    }
 
-        return (float) (1 - Math.sin(Math.acos(x)));
+    public void setMaxScaleFactor(float factor) {
+        mCoverFlowTransformer.setMaxScaleFactor(factor);
+        invalidate();
     }
 
-    private float getChildCircularPathZOffset(int center){
+    public void setRadius(float radius) {
+        mCoverFlowTransformer.setRadius(radius);
+        invalidate();
+    }
 
-        final float v = getOffsetOnCircle(center);
-        final float z = mPerspectiveMultiplier * v;
+    public void setPerspectiveMultiplier(float multiplier) {
+        mCoverFlowTransformer.setPerspectiveMultiplier(multiplier);
+        invalidate();
+    }
 
-        return  z;
+    @Override
+    protected int getPartOfViewCoveredBySibling() {
+        return 0;
     }
 
-    /**
-     * Adds a view as a child view and takes care of measuring it.
-     * Wraps cover in its frame.
-     *
-     * @param child      The view to add
-     * @param layoutMode Either LAYOUT_MODE_LEFT or LAYOUT_MODE_RIGHT
-     * @return child which was actually added to container, subclasses can override to introduce frame views
-     */
-    protected View addAndMeasureChild(final View child, final int layoutMode) {
-        if (child.getLayoutParams() == null) child.setLayoutParams(new LayoutParams(mChildWidth,
-            mChildHeight));
+    @Override
+    protected View getViewFromAdapter(int position, View convertView){
+        CoverFrame frame = (CoverFrame) convertView;
+        View recycled = null;
+        if(frame != null) {
+            recycled = frame.getChildAt(0);
+            //drawing cache is reused, reflection of previous item is not
+            frame.recycle();
+        }
 
-        final int index = layoutMode == LAYOUT_MODE_TO_BEFORE ? 0 : -1;
-        addViewInLayout(child, index, child.getLayoutParams(), true);
+        View v = super.getViewFromAdapter(position, recycled);
+        if(frame == null) {
+            frame = new CoverFrame(getContext(), v);
+        } else {
+            frame.setCover(v);
+        }
 
-        final int pwms = MeasureSpec.makeMeasureSpec(mChildWidth, MeasureSpec.EXACTLY);
-        final int phms = MeasureSpec.makeMeasureSpec(mChildHeight, MeasureSpec.EXACTLY);
-        measureChild(child, pwms, phms);
-        child.setDrawingCacheEnabled(isChildrenDrawnWithCacheEnabled());
+        return frame;
+    }
 
-        return child;
+    @Override
+    protected void updateItemDrawingCache(View child) {
+        //frames always need drawing cache for reflection, software layer enables it
+        if(android.os.Build.VERSION.SDK_INT >= 11) child.setLayerType(LAYER_TYPE_SOFTWARE, null);
+        child.setDrawingCacheEnabled(true);
+    }
+
+    @Override
+    protected void releaseItemViewCaches(View v) {
+        super.releaseItemViewCaches(v);
+        ((CoverFrame) v).recycle();
+    }
+
+    @Override
+    protected View getAdapterView(View child) {
+        return ((CoverFrame) child).getChildAt(0);
+    }
+
+    @Override
+    protected float getItemVisibleFraction(View child) {
+        final float fraction = super.getItemVisibleFraction(child);
+        if(!mOverdrawCullingEnabled || fraction == 0) return fraction;
+
+        //part hidden behind neighbours, as computed by culling in last draw
+        final CoverFrame frame = (CoverFrame) child;
+        if(frame.mOccluded) return 0;
+        if(frame.mClipped && frame.mBoundsRight > frame.mBoundsLeft){
+            return fraction * (frame.mClipRight - frame.mClipLeft) / (frame.mBoundsRight - frame.mBoundsLeft);
+        }
+        return fraction;
+    }
+
+    @Override
+    protected long getItemViewFootprint(View v) {
+        final CoverFrame frame = (CoverFrame) v;
+        long bytes = frame.mDrawingCacheBytes;
+        if(frame.mReflectionCache != null) bytes += frame.mReflectionCache.getByteCount();
+        return bytes;
     }
 
     private Bitmap createReflectionBitmap(Bitmap original){
@@ -277,6 +419,19 @@ public class CoverFlowCarousel extends Carousel {
         private Bitmap mReflectionCache;
         private boolean mReflectionCacheInvalid = false;
 
+        //projection of cover computed before each draw, in parent coordinates
+        private float mBoundsLeft, mBoundsTop, mBoundsRight, mBoundsBottom;
+        private float mCoverLeft, mCoverTop, mCoverRight, mCoverBottom;
+        /**
+         * Size of last drawing cache bitmap returned by frame
+         */
+        private int mDrawingCacheBytes;
+
+        //result of occlusion culling
+        private boolean mOccluded;
+        private boolean mClipped;
+        private float mClipLeft, mClipRight;
+
 
         public CoverFrame(Context context, View cover) {
             super(context);
@@ -284,6 +439,9 @@ public class CoverFlowCarousel extends Carousel {
         }
 
         public void setCover(View cover){
+            //adapter returned recycled cover, frame does not need to be rebuilt and measured again
+            if(getChildCount() == 1 && getChildAt(0) == cover) return;
+
             removeAllViews();
             //mReflectionCacheInvalid = true; //todo uncomment after adding support for reflection
             if(cover.getLayoutParams() != null) setLayoutParams(cover.getLayoutParams());
@@ -312,9 +470,10 @@ public class CoverFlowCarousel extends Carousel {
         @Override
         public Bitmap getDrawingCache(boolean autoScale) {
             final Bitmap b = super.getDrawingCache(autoScale);
+            mDrawingCacheBytes = b != null ? b.getByteCount() : 0;
 
             if(mReflectionCacheInvalid){
-                if(/*(mTouchState != TOUCH_STATE_FLING && mTouchState != TOUCH_STATE_ALIGN) || */mReflectionCache == null){
+                if(mReflectionCache == null){
                     try{
                         mReflectionCache = createReflectionBitmap(b);
                         mReflectionCacheInvalid = false;
@@ -327,12 +486,22 @@ public class CoverFlowCarousel extends Carousel {
             return b;
         }
 
-        public void recycle(){ //todo add puttocache method and call recycle
+        @Override
+        public void destroyDrawingCache() {
+            super.destroyDrawingCache();
+            mDrawingCacheBytes = 0;
+        }
+
+        /**
+         * Releases reflection bitmap, called when frame is rebound or widget releases its caches
+         */
+        public void recycle(){
+            //reflection is regenerated only for frames which had it
             if(mReflectionCache != null){
                 mReflectionCache.recycle();
                 mReflectionCache = null;
+                mReflectionCacheInvalid = true;
             }
-            mReflectionCacheInvalid = true;
 
             //removeAllViewsInLayout();
         }
@@ -0,0 +1,340 @@
+package com.appl.library;
+
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.Arrays;
+
+/**
+ * RecyclerView layout manager with cover flow effect of {@link CoverFlowCarousel}. Items are placed with the same
+ * spacing semantics, transformed by the same {@link CoverFlowTransformer} tuning and drawn in the same order -
+ * item in center on top, items further from center below.
+ * All items should have the same size, it is measured on item in center. Item animator of RecyclerView can be used,
+ * covers get their transformation again when item animations finish.
+ *
+ * @author Martin Appl
+ */
+public class CoverFlowLayoutManager extends RecyclerView.LayoutManager {
+    private static final String STATE_POSITION = "position";
+
+    /**
+     * Relative spacing of items, if <1 items overlap, if >1 there are spaces between them
+     */
+    private float mSpacing = 0.5f;
+    private CoverFlowTransformer mTransformer = new CoverFlowTransformer();
+    private final CarouselTransformer.Transform mTransform = new CarouselTransformer.Transform();
+
+    /**
+     * Scroll offset in pixels, 0 when first item is in center, every next item adds one stride
+     */
+    private int mScrollOffset;
+    /**
+     * Position which should be in center after next layout
+     */
+    private int mPendingPosition = RecyclerView.NO_POSITION;
+
+    private int mChildWidth;
+    private int mChildHeight;
+
+    /**
+     * Item in center when children were last reordered for drawing, -1 forces reorder
+     */
+    private int mOrderedCenter = -1;
+    /**
+     * Children indexed by position - first position of fill, valid only during {@link #fill(RecyclerView.Recycler)}
+     */
+    private View[] mChildByPosition = new View[0];
+
+    private RecyclerView mRecyclerView;
+
+    /**
+     * Item animator of RecyclerView animates translation and alpha of items and resets them when it finishes,
+     * so transformations are applied again when all item animations finished
+     */
+    private final RecyclerView.ItemAnimator.ItemAnimatorFinishedListener mItemAnimationsFinished =
+        new RecyclerView.ItemAnimator.ItemAnimatorFinishedListener() {
+            @Override
+            public void onAnimationsFinished() {
+                applyTransformations();
+            }
+        };
+
+    /**
+     * Item animations of layout are started in the same frame after layout, so they are checked after them
+     */
+    private final Runnable mCheckItemAnimations = new Runnable() {
+        @Override
+        public void run() {
+            if (mRecyclerView == null) return;
+            final RecyclerView.ItemAnimator animator = mRecyclerView.getItemAnimator();
+            if (animator != null) animator.isRunning(mItemAnimationsFinished);
+        }
+    };
+
+    @Override
+    public RecyclerView.LayoutParams generateDefaultLayoutParams() {
+        return new RecyclerView.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+    }
+
+    @Override
+    public boolean canScrollHorizontally() {
+        return true;
+    }
+
+    @Override
+    public void onAttachedToWindow(RecyclerView view) {
+        super.onAttachedToWindow(view);
+        mRecyclerView = view;
+    }
+
+    @Override
+    public void onDetachedFromWindow(RecyclerView view) {
+        super.onDetachedFromWindow(view);
+        view.removeCallbacks(mCheckItemAnimations);
+        mRecyclerView = null;
+    }
+
+    @Override
+    public void onLayoutChildren(RecyclerView.Recycler recycler, RecyclerView.State state) {
+        if (state.getItemCount() == 0) {
+            removeAndRecycleAllViews(recycler);
+            mScrollOffset = 0;
+            return;
+        }
+        //predictive item animations are not supported
+        if (state.isPreLayout()) return;
+
+        //items may have changed their size, center item is measured again
+        final int center = mPendingPosition != RecyclerView.NO_POSITION ? mPendingPosition : getCenterPosition();
+        final int oldStride = getStride();
+        //part of stride by which scroll is past center item
+        final float offsetInStride = mPendingPosition != RecyclerView.NO_POSITION || mChildWidth == 0
+            ? 0 : (float) (mScrollOffset - center * oldStride) / oldStride;
+        mPendingPosition = RecyclerView.NO_POSITION;
+        detachAndScrapAttachedViews(recycler);
+        mChildWidth = 0;
+        mOrderedCenter = -1;
+
+        final int clampedCenter = Math.max(0, Math.min(state.getItemCount() - 1, center));
+        final View centerView = recycler.getViewForPosition(clampedCenter);
+        addView(centerView);
+        measureChildWithMargins(centerView, 0, 0);
+        mChildWidth = getDecoratedMeasuredWidth(centerView);
+        mChildHeight = getDecoratedMeasuredHeight(centerView);
+
+        //center item stays in center when item width changed
+        mScrollOffset = clampedCenter * getStride() + Math.round(offsetInStride * getStride());
+        mScrollOffset = Math.max(0, Math.min(getMaxScrollOffset(), mScrollOffset));
+
+        layoutItem(centerView, getPosition(centerView));
+        fill(recycler);
+
+        if (mRecyclerView != null && mRecyclerView.getItemAnimator() != null) {
+            mRecyclerView.removeCallbacks(mCheckItemAnimations);
+            if (android.os.Build.VERSION.SDK_INT >= 16) {
+                mRecyclerView.postOnAnimation(mCheckItemAnimations);
+            } else {
+                mRecyclerView.post(mCheckItemAnimations);
+            }
+        }
+    }
+
+    @Override
+    public int scrollHorizontallyBy(int dx, RecyclerView.Recycler recycler, RecyclerView.State state) {
+        if (getChildCount() == 0) return 0;
+
+        final int newOffset = Math.max(0, Math.min(getMaxScrollOffset(), mScrollOffset + dx));
+        final int delta = newOffset - mScrollOffset;
+        mScrollOffset = newOffset;
+
+        offsetChildrenHorizontal(-delta);
+        fill(recycler);
+        return delta;
+    }
+
+    /**
+     * Recycles items which left screen, adds items which entered it, orders children for drawing and transforms them
+     */
+    private void fill(RecyclerView.Recycler recycler) {
+        final int count = getItemCount();
+        final int stride = getStride();
+        final int halfSpan = (getWidth() + mChildWidth) / 2;
+        //one item margin on both sides
+        final int first = Math.max(0, (mScrollOffset - halfSpan) / stride - 1);
+        final int last = Math.min(count - 1, (mScrollOffset + halfSpan) / stride + 1);
+
+        if (mChildByPosition.length < last - first + 1) {
+            mChildByPosition = new View[last - first + 1];
+        }
+        final View[] children = mChildByPosition;
+        for (int i = getChildCount() - 1; i >= 0; i--) {
+            final View child = getChildAt(i);
+            final int position = getPosition(child);
+            if (position < first || position > last) {
+                removeAndRecycleView(child, recycler);
+            } else {
+                children[position - first] = child;
+            }
+        }
+
+        boolean added = false;
+        for (int position = first; position <= last; position++) {
+            if (children[position - first] != null) continue;
+
+            final View v = recycler.getViewForPosition(position);
+            addView(v);
+            measureChildWithMargins(v, 0, 0);
+            layoutItem(v, position);
+            children[position - first] = v;
+            added = true;
+        }
+
+        final int center = getCenterPosition();
+        if (added || center != mOrderedCenter) {
+            orderChildren(first, last, center);
+            mOrderedCenter = center;
+        }
+        //recycled views must not be held
+        Arrays.fill(children, 0, last - first + 1, null);
+
+        applyTransformations();
+    }
+
+    private void layoutItem(View v, int position) {
+        final int left = getWidth() / 2 - mChildWidth / 2 + position * getStride() - mScrollOffset;
+        final int top = (getHeight() - mChildHeight) / 2;
+        layoutDecorated(v, left, top, left + mChildWidth, top + mChildHeight);
+    }
+
+    /**
+     * Children are drawn in order in which they are attached. Items on left are drawn first, then items on right
+     * and item in center last.
+     */
+    private void orderChildren(int first, int last, int center) {
+        final View[] children = mChildByPosition;
+        for (int position = first; position < center; position++) {
+            moveToTop(children[position - first]);
+        }
+        for (int position = last; position > center; position--) {
+            moveToTop(children[position - first]);
+        }
+        if (center >= first && center <= last) moveToTop(children[center - first]);
+    }
+
+    private void moveToTop(View child) {
+        if (child == null) return;
+        detachView(child);
+        attachView(child);
+    }
+
+    private void applyTransformations() {
+        final CarouselTransformer.Transform t = mTransform;
+        final float half = getWidth() / 2f;
+        for (int i = 0; i < getChildCount(); i++) {
+            final View v = getChildAt(i);
+            final float childCenter = getDecoratedLeft(v) + (getDecoratedRight(v) - getDecoratedLeft(v)) / 2f;
+
+            t.reset();
+            mTransformer.transform(getWidth(), mChildWidth, mSpacing, (childCenter - half) / half, t);
+
+            v.setRotationY(t.rotationY);
+            v.setTranslationX(t.translationX);
+            v.setScaleX(t.scale);
+            v.setScaleY(t.scale);
+            v.setAlpha(t.alpha);
+        }
+    }
+
+    @Override
+    public void scrollToPosition(int position) {
+        mPendingPosition = position;
+        requestLayout();
+    }
+
+    @Override
+    public void smoothScrollToPosition(RecyclerView recyclerView, RecyclerView.State state, int position) {
+        if (getChildCount() == 0) {
+            scrollToPosition(position);
+            return;
+        }
+        recyclerView.smoothScrollBy(position * getStride() - mScrollOffset, 0);
+    }
+
+    @Override
+    public int computeHorizontalScrollOffset(RecyclerView.State state) {
+        return mScrollOffset;
+    }
+
+    @Override
+    public int computeHorizontalScrollRange(RecyclerView.State state) {
+        return getMaxScrollOffset() + getWidth();
+    }
+
+    @Override
+    public int computeHorizontalScrollExtent(RecyclerView.State state) {
+        return getWidth();
+    }
+
+    @Override
+    public Parcelable onSaveInstanceState() {
+        final Bundle state = new Bundle();
+        //layout with pending position may not have happened yet
+        state.putInt(STATE_POSITION,
+            mPendingPosition != RecyclerView.NO_POSITION ? mPendingPosition : getCenterPosition());
+        return state;
+    }
+
+    @Override
+    public void onRestoreInstanceState(Parcelable state) {
+        if (state instanceof Bundle) {
+            mPendingPosition = ((Bundle) state).getInt(STATE_POSITION, RecyclerView.NO_POSITION);
+            requestLayout();
+        }
+    }
+
+    /**
+     * @return adapter position of item nearest to center
+     */
+    public int getCenterPosition() {
+        if (getItemCount() == 0) return RecyclerView.NO_POSITION;
+        final int position = Math.round((float) mScrollOffset / getStride());
+        return Math.max(0, Math.min(getItemCount() - 1, position));
+    }
+
+    private int getStride() {
+        return Math.max(1, (int) (mChildWidth * mSpacing));
+    }
+
+    private int getMaxScrollOffset() {
+        return Math.max(0, (getItemCount() - 1) * getStride());
+    }
+
+    /**
+     * Set spacing of items (float means fraction of item size, 1 = item size), same as {@link Carousel#setSpacing(float)}
+     */
+    public void setSpacing(float spacing) {
+        final int center = getCenterPosition();
+        mSpacing = spacing;
+        scrollToPosition(center);
+    }
+
+    public float getSpacing() {
+        return mSpacing;
+    }
+
+    /**
+     * Sets tuning of cover flow effect, transformer can be shared with {@link CoverFlowCarousel}
+     */
+    public void setTransformer(CoverFlowTransformer transformer) {
+        if (transformer == null) throw new IllegalArgumentException("Transformer must not be null");
+        mTransformer = transformer;
+        requestLayout();
+    }
+
+    public CoverFlowTransformer getTransformer() {
+        return mTransformer;
+    }
+}
@@ -0,0 +1,318 @@
+package com.appl.library;
+
+/**
+ * Cover flow effect. Covers rotate towards center, zoom in near center and follow path on circle.
+ *
+ * @author Martin Appl
+ */
+public class CoverFlowTransformer implements CarouselTransformer {
+
+    /**
+     * Current tuning, replaced as whole when any parameter changes
+     */
+    private Config mConfig = new Config.Builder().build();
+
+    //values derived from config and size of widget, recomputed only when one of them changes
+    private Config mDerivedConfig;
+    private int mDerivedWidgetWidth;
+    private float mDerivedStride;
+    private float mRotationThreshold;
+    private float mScalingThreshold;
+    private float mAdjustPositionThreshold;
+    private float mAdjustPositionDistance;
+
+    @Override
+    public void transform(Carousel carousel, float relativePosition, Transform out) {
+        transform(carousel.getWidth(), carousel.getChildWidth(), carousel.getSpacing(), relativePosition, out);
+    }
+
+    /**
+     * Computes transformation without carousel, so the same tuning can be used by other containers
+     *
+     * @param widgetWidth width of container
+     * @param childWidth  width of item
+     * @param spacing     distance of neighbouring items relative to item width
+     */
+    public void transform(int widgetWidth, int childWidth, float spacing, float relativePosition, Transform out) {
+        updateDerivedValues(widgetWidth, childWidth * spacing);
+
+        out.rotationY = getRotationAngle(relativePosition) - getAngleOnCircle(relativePosition);
+        out.translationX = getAdjustPosition(relativePosition);
+        out.scale = getScaleFactor(relativePosition) - getCircularPathZOffset(relativePosition);
+    }
+
+    private void updateDerivedValues(int widgetWidth, float stride) {
+        if (mDerivedConfig == mConfig && mDerivedWidgetWidth == widgetWidth && mDerivedStride == stride) return;
+
+        final Config c = mConfig;
+        //parameters were tuned on widget of tuning size, thresholds are scaled to actual size
+        final float sizeMultiplier = ((float) c.tuningWidgetSize) / ((float) widgetWidth);
+        mRotationThreshold = c.rotationThreshold * sizeMultiplier;
+        mScalingThreshold = c.scalingThreshold * sizeMultiplier;
+        mAdjustPositionThreshold = c.adjustPositionThreshold * sizeMultiplier;
+        mAdjustPositionDistance = stride * c.adjustPositionMultiplier;
+
+        mDerivedConfig = c;
+        mDerivedWidgetWidth = widgetWidth;
+        mDerivedStride = stride;
+    }
+
+    public Config getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * Replaces all tuning parameters at once. Container using transformer has to be invalidated to apply them.
+     */
+    public void setConfig(Config config) {
+        if (config == null) throw new IllegalArgumentException("Config must not be null");
+        mConfig = config;
+    }
+
+    public void setTuningWidgetSize(int size) {
+        setConfig(mConfig.buildUpon().setTuningWidgetSize(size).build());
+    }
+
+    public void setRotationThreshold(float threshold) {
+        setConfig(mConfig.buildUpon().setRotationThreshold(threshold).build());
+    }
+
+    public void setScalingThreshold(float threshold) {
+        setConfig(mConfig.buildUpon().setScalingThreshold(threshold).build());
+    }
+
+    public void setAdjustPositionThreshold(float threshold) {
+        setConfig(mConfig.buildUpon().setAdjustPositionThreshold(threshold).build());
+    }
+
+    public void setAdjustPositionMultiplier(float multiplier) {
+        setConfig(mConfig.buildUpon().setAdjustPositionMultiplier(multiplier).build());
+    }
+
+    public void setMaxRotationAngle(float angle) {
+        setConfig(mConfig.buildUpon().setMaxRotationAngle(angle).build());
+    }
+
+    public void setMaxScaleFactor(float factor) {
+        setConfig(mConfig.buildUpon().setMaxScaleFactor(factor).build());
+    }
+
+    public void setRadius(float radius) {
+        setConfig(mConfig.buildUpon().setRadius(radius).build());
+    }
+
+    public void setPerspectiveMultiplier(float multiplier) {
+        setConfig(mConfig.buildUpon().setPerspectiveMultiplier(multiplier).build());
+    }
+
+    private float getRotationAngle(float position){
+        return -mConfig.maxRotationAngle * getClampedRelativePosition(position, mRotationThreshold);
+    }
+
+    private float getAngleOnCircle(float position){
+        float x = position/mConfig.radius;
+        if(x < -1.0f) x = -1.0f;
+        if(x > 1.0f) x = 1.0f;
+
+        return (float) (Math.acos(x)/Math.PI*180.0f - 90.0f);
+    }
+
+    private float getScaleFactor(float position){
+        return 1 + (mConfig.maxScaleFactor-1) * (1 - Math.abs(getClampedRelativePosition(position, mScalingThreshold)));
+    }
+
+    /**
+     * Clamps relative position by threshold, and produces values in range -1 to 1 directly usable for transformation computation
+     * @param position value int range -1 to 1
+     * @param threshold always positive value of threshold distance from center in range 0-1
+     * @return
+     */
+    static float getClampedRelativePosition(float position, float threshold){
+        if(position < 0){
+            if(position < -threshold) return -1f;
+            else return position/threshold;
+        }
+        else{
+            if(position > threshold) return 1;
+            else return position/threshold;
+        }
+    }
+
+    private float getAdjustPosition(float position) {
+        final float crp = getClampedRelativePosition(position, mAdjustPositionThreshold);
+
+        return mAdjustPositionDistance * crp * getSpacingMultiplierOnCircle(position);
+    }
+
+    private float getSpacingMultiplierOnCircle(float position){
+        float x = position/mConfig.radius;
+        if(x < -1.0f) x = -1.0f;
+        if(x > 1.0f) x = 1.0f;
+
+        return (float) Math.sin(Math.acos(x));
+    }
+
+    /**
+     * Compute offset following path on circle
+     * @return offset from position on unitary circle
+     */
+    private float getOffsetOnCircle(float position){
+        float x = position/mConfig.radius;
+        if(x < -1.0f) x = -1.0f;
+        if(x > 1.0f) x = 1.0f;
+
+        return (float) (1 - Math.sin(Math.acos(x)));
+    }
+
+    private float getCircularPathZOffset(float position){
+        return mConfig.perspectiveMultiplier * getOffsetOnCircle(position);
+    }
+
+    /**
+     * Immutable snapshot of tuning parameters of cover flow effect
+     */
+    public static final class Config {
+        /**
+         * Widget size on which was tuning of parameters done. This value is used to scale parameters on when widgets has different size
+         */
+        public final int tuningWidgetSize;
+
+        /**
+         * Distance from center as fraction of half of widget size where covers start to rotate into center
+         * 1 means rotation starts on edge of widget, 0 means only center rotated
+         */
+        public final float rotationThreshold;
+
+        /**
+         * Distance from center as fraction of half of widget size where covers start to zoom in
+         * 1 means scaling starts on edge of widget, 0 means only center scaled
+         */
+        public final float scalingThreshold;
+
+        /**
+         * Distance from center as fraction of half of widget size,
+         * where covers start enlarge their spacing to allow for smooth passing each other without jumping over each other
+         * 1 means edge of widget, 0 means only center
+         */
+        public final float adjustPositionThreshold;
+
+        /**
+         * By enlarging this value, you can enlarge spacing in center of widget done by position adjustment
+         */
+        public final float adjustPositionMultiplier;
+
+        /**
+         * Absolute value of rotation angle of cover at edge of widget in degrees
+         */
+        public final float maxRotationAngle;
+
+        /**
+         * Scale factor of item in center
+         */
+        public final float maxScaleFactor;
+
+        /**
+         * Radius of circle path which covers follow. Range of screen is -1 to 1, minimal radius is therefore 1
+         */
+        public final float radius;
+
+        /**
+         * Size multiplier used to simulate perspective
+         */
+        public final float perspectiveMultiplier;
+
+        private Config(Builder b) {
+            tuningWidgetSize = b.mTuningWidgetSize;
+            rotationThreshold = b.mRotationThreshold;
+            scalingThreshold = b.mScalingThreshold;
+            adjustPositionThreshold = b.mAdjustPositionThreshold;
+            adjustPositionMultiplier = b.mAdjustPositionMultiplier;
+            maxRotationAngle = b.mMaxRotationAngle;
+            maxScaleFactor = b.mMaxScaleFactor;
+            radius = b.mRadius;
+            perspectiveMultiplier = b.mPerspectiveMultiplier;
+        }
+
+        /**
+         * @return builder initialized with values of this config
+         */
+        public Builder buildUpon() {
+            return new Builder()
+                .setTuningWidgetSize(tuningWidgetSize)
+                .setRotationThreshold(rotationThreshold)
+                .setScalingThreshold(scalingThreshold)
+                .setAdjustPositionThreshold(adjustPositionThreshold)
+                .setAdjustPositionMultiplier(adjustPositionMultiplier)
+                .setMaxRotationAngle(maxRotationAngle)
+                .setMaxScaleFactor(maxScaleFactor)
+                .setRadius(radius)
+                .setPerspectiveMultiplier(perspectiveMultiplier);
+        }
+
+        public static final class Builder {
+            private int mTuningWidgetSize = 1280;
+            private float mRotationThreshold = 0.3f;
+            private float mScalingThreshold = 0.3f;
+            private float mAdjustPositionThreshold = 0.1f;
+            private float mAdjustPositionMultiplier = 0.8f;
+            private float mMaxRotationAngle = 70.0f;
+            private float mMaxScaleFactor = 1.2f;
+            private float mRadius = 2f;
+            private float mPerspectiveMultiplier = 1f;
+
+            public Builder setTuningWidgetSize(int size) {
+                if (size <= 0) throw new IllegalArgumentException("Tuning widget size must be greater than 0");
+                mTuningWidgetSize = size;
+                return this;
+            }
+
+            public Builder setRotationThreshold(float threshold) {
+                if (threshold <= 0) throw new IllegalArgumentException("Rotation threshold must be greater than 0");
+                mRotationThreshold = threshold;
+                return this;
+            }
+
+            public Builder setScalingThreshold(float threshold) {
+                if (threshold <= 0) throw new IllegalArgumentException("Scaling threshold must be greater than 0");
+                mScalingThreshold = threshold;
+                return this;
+            }
+
+            public Builder setAdjustPositionThreshold(float threshold) {
+                if (threshold <= 0) throw new IllegalArgumentException("Adjust position threshold must be greater than 0");
+                mAdjustPositionThreshold = threshold;
+                return this;
+            }
+
+            public Builder setAdjustPositionMultiplier(float multiplier) {
+                mAdjustPositionMultiplier = multiplier;
+                return this;
+            }
+
+            public Builder setMaxRotationAngle(float angle) {
+                mMaxRotationAngle = angle;
+                return this;
+            }
+
+            public Builder setMaxScaleFactor(float factor) {
+                mMaxScaleFactor = factor;
+                return this;
+            }
+
+            public Builder setRadius(float radius) {
+                if (radius < 1) throw new IllegalArgumentException("Radius must be at least 1");
+                mRadius = radius;
+                return this;
+            }
+
+            public Builder setPerspectiveMultiplier(float multiplier) {
+                mPerspectiveMultiplier = multiplier;
+                return this;
+            }
+
+            public Config build() {
+                return new Config(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.appl.library;
+
+/**
+ * Items fade out with distance from center.
+ *
+ * @author Martin Appl
+ */
+public class FadeTransformer implements CarouselTransformer {
+    /**
+     * Opacity of items at edge of widget and further
+     */
+    private final float mMinAlpha;
+
+    public FadeTransformer() {
+        this(0.2f);
+    }
+
+    public FadeTransformer(float minAlpha) {
+        mMinAlpha = minAlpha;
+    }
+
+    @Override
+    public void transform(Carousel carousel, float relativePosition, Transform out) {
+        final float d = Math.min(Math.abs(relativePosition), 1f);
+        out.alpha = 1f - (1f - mMinAlpha) * d;
+    }
+}
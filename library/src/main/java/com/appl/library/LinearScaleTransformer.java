@@ -0,0 +1,32 @@
+package com.appl.library;
+
+/**
+ * Items are not rotated, they only shrink linearly with distance from center.
+ *
+ * @author Martin Appl
+ */
+public class LinearScaleTransformer implements CarouselTransformer {
+    /**
+     * Scale of item in center
+     */
+    private final float mMaxScale;
+    /**
+     * Scale of items at edge of widget and further
+     */
+    private final float mMinScale;
+
+    public LinearScaleTransformer() {
+        this(1.2f, 0.8f);
+    }
+
+    public LinearScaleTransformer(float maxScale, float minScale) {
+        mMaxScale = maxScale;
+        mMinScale = minScale;
+    }
+
+    @Override
+    public void transform(Carousel carousel, float relativePosition, Transform out) {
+        final float d = Math.min(Math.abs(relativePosition), 1f);
+        out.scale = mMaxScale - (mMaxScale - mMinScale) * d;
+    }
+}
@@ -0,0 +1,198 @@
+package com.appl.library;
+
+import android.view.View;
+
+/**
+ * Keeps at most fixed number of players (video decoders, animated image drawables...) attached to items nearest to
+ * center of carousel. Players are created lazily once per slot and moved between items as carousel scrolls, so cost
+ * of playback does not depend on number of items in adapter. Playback is paused while carousel flings and no new
+ * playback is started until fling ends.
+ *
+ * @param <P> type of player
+ * @author Martin Appl
+ */
+public class PlaybackSlotPool<P> {
+
+    /**
+     * Connects players of pool with item views. All methods are called on UI thread.
+     */
+    public interface PlaybackBinder<P> {
+        /**
+         * Creates player for slot, player is reused for all items which get into this slot
+         */
+        P createPlayer();
+
+        /**
+         * Binds player to item view and starts playback, for example sets surface of view as output of decoder
+         *
+         * @param itemView view returned by adapter for position
+         */
+        void attach(P player, View itemView, int position);
+
+        /**
+         * Stops playback and unbinds player from item view, player stays ready for another item
+         */
+        void detach(P player, View itemView, int position);
+
+        void pause(P player);
+
+        void resume(P player);
+
+        /**
+         * Releases resources of player, it is not used anymore
+         */
+        void release(P player);
+    }
+
+    private static final int NO_POSITION = -1;
+
+    private final PlaybackBinder<P> mBinder;
+    private final Object[] mPlayers;
+    private final int[] mPositions;
+    private final View[] mViews;
+    private final boolean[] mPaused;
+    /**
+     * Positions which should have playback in current frame, reused every frame
+     */
+    private final int[] mCandidates;
+
+    /**
+     * @param slotCount maximal number of simultaneously active players
+     * @param binder    binder of players to item views
+     */
+    public PlaybackSlotPool(int slotCount, PlaybackBinder<P> binder) {
+        if (slotCount < 1) throw new IllegalArgumentException("Slot count must be at least 1");
+        if (binder == null) throw new IllegalArgumentException("Binder must not be null");
+        mBinder = binder;
+        mPlayers = new Object[slotCount];
+        mPositions = new int[slotCount];
+        mViews = new View[slotCount];
+        mPaused = new boolean[slotCount];
+        mCandidates = new int[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            mPositions[i] = NO_POSITION;
+        }
+    }
+
+    public int getSlotCount() {
+        return mPlayers.length;
+    }
+
+    /**
+     * @return position of item with attached player in given slot, -1 if slot is free
+     */
+    public int getSlotPosition(int slot) {
+        return mPositions[slot];
+    }
+
+    /**
+     * Moves players to items nearest to center. Called by carousel once per frame.
+     *
+     * @param flinging true when carousel flings, playback is paused then
+     */
+    void update(Carousel carousel, boolean flinging) {
+        final int count = carousel.getChildCount();
+        final int center = carousel.getCenterChildIndex();
+        final int first = carousel.getFirstVisiblePosition();
+        final int slots = mPlayers.length;
+
+        //center item first, then its neighbours alternately
+        int candidates = 0;
+        if (center >= 0 && center < count) {
+            for (int d = 0; candidates < slots && (center - d >= 0 || center + d < count); d++) {
+                if (center + d < count) mCandidates[candidates++] = first + center + d;
+                if (d > 0 && candidates < slots && center - d >= 0) mCandidates[candidates++] = first + center - d;
+            }
+        }
+
+        //release slots of items which moved away or were rebound to other view
+        for (int s = 0; s < slots; s++) {
+            final int position = mPositions[s];
+            if (position == NO_POSITION) continue;
+
+            final int index = position - first;
+            final View view = index >= 0 && index < count ? carousel.getAdapterView(carousel.getChildAt(index)) : null;
+            if (view != mViews[s] || !isCandidate(position, candidates)) {
+                detachSlot(s);
+            }
+        }
+
+        //new playback is not started during fling, items pass by too fast
+        if (!flinging) {
+            for (int c = 0; c < candidates; c++) {
+                final int position = mCandidates[c];
+                if (findSlot(position) != -1) continue;
+
+                final int s = findSlot(NO_POSITION);
+                if (s == -1) break;
+                attachSlot(s, position, carousel.getAdapterView(carousel.getChildAt(position - first)));
+            }
+        }
+
+        for (int s = 0; s < slots; s++) {
+            if (mPositions[s] == NO_POSITION || mPaused[s] == flinging) continue;
+            mPaused[s] = flinging;
+            if (flinging) {
+                mBinder.pause(getPlayer(s));
+            } else {
+                mBinder.resume(getPlayer(s));
+            }
+        }
+    }
+
+    /**
+     * Stops all playback, players are kept for reuse
+     */
+    public void detachAll() {
+        for (int s = 0; s < mPlayers.length; s++) {
+            if (mPositions[s] != NO_POSITION) detachSlot(s);
+        }
+    }
+
+    /**
+     * Stops all playback and releases all players, they are created again when needed
+     */
+    public void releaseAll() {
+        detachAll();
+        for (int s = 0; s < mPlayers.length; s++) {
+            if (mPlayers[s] != null) {
+                mBinder.release(getPlayer(s));
+                mPlayers[s] = null;
+            }
+        }
+    }
+
+    private void attachSlot(int slot, int position, View view) {
+        if (mPlayers[slot] == null) mPlayers[slot] = mBinder.createPlayer();
+        mPositions[slot] = position;
+        mViews[slot] = view;
+        mPaused[slot] = false;
+        mBinder.attach(getPlayer(slot), view, position);
+    }
+
+    private void detachSlot(int slot) {
+        mBinder.detach(getPlayer(slot), mViews[slot], mPositions[slot]);
+        mPositions[slot] = NO_POSITION;
+        mViews[slot] = null;
+        mPaused[slot] = false;
+    }
+
+    private boolean isCandidate(int position, int candidates) {
+        for (int c = 0; c < candidates; c++) {
+            if (mCandidates[c] == position) return true;
+        }
+        return false;
+    }
+
+    private int findSlot(int position) {
+        for (int s = 0; s < mPositions.length; s++) {
+            if (mPositions[s] == position) return s;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private P getPlayer(int slot) {
+        return (P) mPlayers[slot];
+    }
+}
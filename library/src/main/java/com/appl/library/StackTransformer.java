@@ -0,0 +1,38 @@
+package com.appl.library;
+
+/**
+ * Items away from center are pushed towards it and shrunk, so they form stacks on both sides of centered item.
+ *
+ * @author Martin Appl
+ */
+public class StackTransformer implements CarouselTransformer {
+    /**
+     * Fraction of item spacing by which are side items moved towards center (0-1)
+     */
+    private final float mStackFactor;
+    /**
+     * Scale lost by items at edge of widget
+     */
+    private final float mScaleStep;
+
+    public StackTransformer() {
+        this(0.6f, 0.3f);
+    }
+
+    public StackTransformer(float stackFactor, float scaleStep) {
+        mStackFactor = stackFactor;
+        mScaleStep = scaleStep;
+    }
+
+    @Override
+    public void transform(Carousel carousel, float relativePosition, Transform out) {
+        final float halfWidth = carousel.getWidth() / 2f;
+        //distance from center clamped to one item, items further are moved all by the same amount
+        final float offset = relativePosition * halfWidth;
+        final float stride = carousel.getChildWidth() * carousel.getSpacing();
+        final float clamped = Math.max(-stride, Math.min(stride, offset));
+
+        out.translationX = -(offset - clamped) * mStackFactor;
+        out.scale = 1f - mScaleStep * Math.min(Math.abs(relativePosition), 1f);
+    }
+}
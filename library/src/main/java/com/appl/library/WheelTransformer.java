@@ -0,0 +1,36 @@
+package com.appl.library;
+
+/**
+ * Items are placed on outer surface of wheel rotating around vertical axis.
+ *
+ * @author Martin Appl
+ */
+public class WheelTransformer implements CarouselTransformer {
+    /**
+     * Angle in degrees of item at edge of widget
+     */
+    private final float mMaxAngle;
+
+    public WheelTransformer() {
+        this(60f);
+    }
+
+    public WheelTransformer(float maxAngle) {
+        mMaxAngle = maxAngle;
+    }
+
+    @Override
+    public void transform(Carousel carousel, float relativePosition, Transform out) {
+        float p = relativePosition;
+        if(p < -1.0f) p = -1.0f;
+        if(p > 1.0f) p = 1.0f;
+
+        final double angle = Math.toRadians(mMaxAngle * p);
+        final float halfWidth = carousel.getWidth() / 2f;
+
+        out.rotationY = -mMaxAngle * p;
+        //item moves along circle instead of straight line
+        out.translationX = (float) (Math.sin(angle) * halfWidth - p * halfWidth);
+        out.scale = (float) (0.5 + 0.5 * Math.cos(angle));
+    }
+}
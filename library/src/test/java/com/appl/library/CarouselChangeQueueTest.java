@@ -0,0 +1,153 @@
+package com.appl.library;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Martin Appl
+ */
+public class CarouselChangeQueueTest {
+    private static final int SIZE = 10;
+
+    private final List<Runnable> mMainTasks = new ArrayList<>();
+    private final List<Runnable> mFrameTasks = new ArrayList<>();
+    private final List<int[]> mChanges = new ArrayList<>();
+    private int mSelectedItem;
+
+    private CarouselChangeQueue<String> mQueue;
+
+    @Before
+    public void setUp() {
+        final List<String> items = new ArrayList<>();
+        for (int i = 0; i < SIZE; i++) items.add("item" + i);
+
+        mQueue = new CarouselChangeQueue<>(new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                mMainTasks.add(task);
+            }
+        }, items);
+        mQueue.setTarget(new CarouselChangeQueue.Target() {
+            @Override
+            public int getSelectedItem() {
+                return mSelectedItem;
+            }
+
+            @Override
+            public void postOnNextFrame(Runnable task) {
+                mFrameTasks.add(task);
+            }
+
+            @Override
+            public void onItemsChanged(int firstChanged, int lastChanged, int sizeDelta, int anchor) {
+                mChanges.add(new int[]{firstChanged, lastChanged, sizeDelta, anchor});
+            }
+        });
+        mSelectedItem = 5;
+    }
+
+    private void runFrame() {
+        final List<Runnable> main = new ArrayList<>(mMainTasks);
+        mMainTasks.clear();
+        for (Runnable r : main) r.run();
+        final List<Runnable> frame = new ArrayList<>(mFrameTasks);
+        mFrameTasks.clear();
+        for (Runnable r : frame) r.run();
+    }
+
+    private void assertChange(int firstChanged, int lastChanged, int sizeDelta, int anchor) {
+        assertEquals(1, mChanges.size());
+        final int[] c = mChanges.get(0);
+        assertEquals("firstChanged", firstChanged, c[0]);
+        assertEquals("lastChanged", lastChanged, c[1]);
+        assertEquals("sizeDelta", sizeDelta, c[2]);
+        assertEquals("anchor", anchor, c[3]);
+    }
+
+    @Test
+    public void changesUntilNextFrameAreAppliedAsOneBatch() {
+        mQueue.update(1, "a");
+        mQueue.update(2, "b");
+        mQueue.add("c");
+        assertEquals(1, mMainTasks.size());
+        assertEquals(SIZE, mQueue.size());
+
+        runFrame();
+        assertEquals(1, mChanges.size());
+        assertEquals(SIZE + 1, mQueue.size());
+        assertEquals("c", mQueue.get(SIZE));
+
+        //change after applied batch schedules another one
+        mQueue.remove(0);
+        assertEquals(1, mMainTasks.size());
+    }
+
+    @Test
+    public void insertBeforeSelectionMovesAnchor() {
+        mQueue.insert(2, "new");
+        runFrame();
+
+        assertChange(2, 2, 1, 6);
+        assertEquals("new", mQueue.get(2));
+        assertEquals("item5", mQueue.get(6));
+    }
+
+    @Test
+    public void removeBeforeSelectionMovesAnchor() {
+        mQueue.remove(3);
+        runFrame();
+
+        assertChange(3, 2, -1, 4);
+        assertEquals("item5", mQueue.get(4));
+    }
+
+    @Test
+    public void removedSelectionIsReplacedByNextItem() {
+        mQueue.remove(5);
+        runFrame();
+
+        assertChange(5, 4, -1, 5);
+        assertEquals("item6", mQueue.get(5));
+    }
+
+    @Test
+    public void insertBeforeUpdateExtendsChangedRange() {
+        mQueue.update(7, "updated");
+        mQueue.insert(1, "new");
+        runFrame();
+
+        assertChange(1, 8, 1, 6);
+        assertEquals("updated", mQueue.get(8));
+    }
+
+    @Test
+    public void changesOutOfRangeAreIgnoredAndInsertPastEndAppends() {
+        mQueue.remove(SIZE);
+        mQueue.update(SIZE + 3, "ignored");
+        runFrame();
+        assertEquals(0, mChanges.size());
+
+        mQueue.insert(SIZE + 3, "appended");
+        runFrame();
+        assertChange(SIZE, SIZE, 1, 5);
+        assertEquals("appended", mQueue.get(SIZE));
+    }
+
+    @Test
+    public void withoutTargetChangesAreAppliedOnUiThreadImmediately() {
+        mQueue.setTarget(null);
+        mQueue.remove(0);
+        assertEquals(SIZE, mQueue.size());
+
+        runFrame();
+        assertEquals(SIZE - 1, mQueue.size());
+        assertEquals(0, mFrameTasks.size());
+        assertEquals(0, mChanges.size());
+    }
+}
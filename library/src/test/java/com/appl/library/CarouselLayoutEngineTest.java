@@ -0,0 +1,123 @@
+package com.appl.library;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Martin Appl
+ */
+public class CarouselLayoutEngineTest {
+    private static final int ITEM_WIDTH = 100;
+    private static final float SPACING = 0.5f;
+    private static final int STRIDE = 50;
+
+    private CarouselLayoutEngine mEngine;
+
+    @Before
+    public void setUp() {
+        mEngine = new CarouselLayoutEngine();
+        mEngine.setGeometry(100, ITEM_WIDTH, SPACING, ITEM_WIDTH - STRIDE, 400);
+    }
+
+    @Test
+    public void updateCenterRoundsToNearestItemAndPrefersLeftOnTie() {
+        mEngine.layoutFirst(0, 0);
+        for (int i = 0; i < 4; i++) mEngine.addAfter();
+        final int firstCenter = ITEM_WIDTH / 2;
+
+        mEngine.updateCenter(firstCenter + STRIDE / 2);
+        assertEquals(0, mEngine.getCenterIndex());
+
+        mEngine.updateCenter(firstCenter + STRIDE / 2 + 1);
+        assertEquals(1, mEngine.getCenterIndex());
+
+        mEngine.updateCenter(firstCenter + 2 * STRIDE + STRIDE / 2 - 1);
+        assertEquals(2, mEngine.getCenterIndex());
+    }
+
+    @Test
+    public void updateCenterIsClampedToLaidOutRange() {
+        mEngine.layoutFirst(10, 0);
+        for (int i = 0; i < 3; i++) mEngine.addAfter();
+
+        mEngine.updateCenter(-10 * STRIDE);
+        assertEquals(0, mEngine.getCenterIndex());
+        assertEquals(10, mEngine.getCenterPosition());
+
+        mEngine.updateCenter(100 * STRIDE);
+        assertEquals(3, mEngine.getCenterIndex());
+        assertEquals(13, mEngine.getCenterPosition());
+    }
+
+    @Test
+    public void ringBufferKeepsCoordinatesWhenWrappingAndGrowing() {
+        mEngine.layoutFirst(50, 0);
+        assertCoordinates();
+
+        //head wraps around start of buffer
+        for (int i = 0; i < 5; i++) {
+            mEngine.addBefore();
+            assertCoordinates();
+        }
+        //buffer of initial capacity is full and grows
+        for (int i = 0; i < 5; i++) {
+            mEngine.addAfter();
+            assertCoordinates();
+        }
+        for (int i = 0; i < 3; i++) {
+            mEngine.removeFirst();
+            assertCoordinates();
+        }
+        for (int i = 0; i < 20; i++) {
+            mEngine.addAfter();
+            mEngine.removeFirst();
+            assertCoordinates();
+        }
+
+        assertEquals(8, mEngine.getLaidOutCount());
+        assertEquals(68, mEngine.getFirstPosition());
+    }
+
+    @Test
+    public void offsetPositionsKeepsCoordinatesAndUpdatesEdges() {
+        mEngine.setGeometry(10, ITEM_WIDTH, SPACING, ITEM_WIDTH - STRIDE, 400);
+        mEngine.layoutFirst(5, 100);
+        mEngine.addAfter();
+        mEngine.addAfter();
+
+        //two items inserted in front of laid out ones
+        mEngine.setGeometry(12, ITEM_WIDTH, SPACING, ITEM_WIDTH - STRIDE, 400);
+        mEngine.offsetPositions(2);
+        assertEquals(7, mEngine.getFirstPosition());
+        assertEquals(9, mEngine.getLastPosition());
+        assertEquals(7, mEngine.getCenterPosition());
+        assertEquals(100, mEngine.getLeftAt(0));
+        assertEquals(100, mEngine.getItemLeft(7));
+        assertEquals(CarouselLayoutEngine.NO_VALUE, mEngine.getLeftEdge());
+        assertEquals(CarouselLayoutEngine.NO_VALUE, mEngine.getRightEdge());
+        assertCoordinates();
+
+        //items in front and after laid out ones removed, laid out items become first and last
+        mEngine.setGeometry(3, ITEM_WIDTH, SPACING, ITEM_WIDTH - STRIDE, 400);
+        mEngine.offsetPositions(-7);
+        assertEquals(0, mEngine.getFirstPosition());
+        assertEquals(100, mEngine.getLeftEdge());
+        assertEquals(100 + 2 * STRIDE + ITEM_WIDTH, mEngine.getRightEdge());
+        assertCoordinates();
+    }
+
+    /**
+     * Cached coordinates of every laid out item have to match coordinates computed from its position
+     */
+    private void assertCoordinates() {
+        final int first = mEngine.getFirstPosition();
+        for (int i = 0; i < mEngine.getLaidOutCount(); i++) {
+            final int left = mEngine.getItemLeft(first + i);
+            assertEquals(left, mEngine.getLeftAt(i));
+            assertEquals(left + ITEM_WIDTH, mEngine.getRightAt(i));
+            assertEquals(left + ITEM_WIDTH / 2, mEngine.getCenterAt(i));
+        }
+    }
+}